@@ -0,0 +1,68 @@
+package com.res.server.kata_sweet_shop.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtUtil on every authenticated request: issuing, validating and reading claims. The cached
+ * variants hit the verified-token cache; the uncached ones use a JwtUtil with the cache switched
+ * off, so every call checks the signature and parses the claims.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret!!";
+
+    private JwtUtil cached;
+    private JwtUtil uncached;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cached = new JwtUtil(SECRET, 3_600_000, 10_000);
+        uncached = new JwtUtil(SECRET, 3_600_000, 0);
+        token = cached.generateToken("alice", List.of("USER", "ADMIN"));
+        cached.validateToken(token);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return cached.generateToken("alice", List.of("USER", "ADMIN"));
+    }
+
+    @Benchmark
+    public boolean validateTokenCached() {
+        return cached.validateToken(token);
+    }
+
+    @Benchmark
+    public boolean validateTokenUncached() {
+        return uncached.validateToken(token);
+    }
+
+    @Benchmark
+    public String usernameUncached() {
+        return uncached.getUsernameFromToken(token);
+    }
+
+    @Benchmark
+    public List<String> rolesUncached() {
+        return uncached.getRolesFromToken(token);
+    }
+}
@@ -0,0 +1,71 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of answering /api/sweets/all from scratch, by catalog size: entity to SweetResponse mapping
+ * (what the controller's toResp used to do), JSON serialization, and the JSON + gzip pair that
+ * CatalogSnapshot computes once per catalog version.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogSerializationBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Sweet> sweets;
+    private List<SweetResponse> responses;
+
+    @Setup
+    public void setUp() {
+        sweets = Catalogs.sweets(size);
+        responses = Catalogs.responses(size);
+    }
+
+    @Benchmark
+    public List<SweetResponse> mapToResponses() {
+        List<SweetResponse> out = new ArrayList<>(sweets.size());
+        for (Sweet s : sweets) {
+            out.add(SweetResponse.from(s));
+        }
+        return out;
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws Exception {
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(mapToResponses());
+    }
+
+    @Benchmark
+    public EncodedCatalog encodeJsonAndGzip() {
+        return EncodedCatalog.encode(objectMapper, responses);
+    }
+}
@@ -0,0 +1,101 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic test catalogs, and an in-memory stand-in for SweetRepository, for the benchmarks.
+ */
+final class Catalogs {
+
+    private static final String[] FLAVOURS = {"Chocolate", "Mango", "Pistachio", "Rose", "Saffron", "Coconut",
+            "Caramel", "Almond", "Cardamom", "Strawberry", "Hazelnut", "Vanilla"};
+    private static final String[] KINDS = {"Ladoo", "Barfi", "Fudge", "Toffee", "Truffle", "Halwa", "Peda",
+            "Jalebi", "Cake", "Cookie", "Brittle", "Lollipop"};
+    static final String[] CATEGORIES = {"Traditional", "Candy", "Chocolate", "Baked", "Sugar-free"};
+
+    private Catalogs() {
+    }
+
+    static List<Sweet> sweets(int size) {
+        Random random = new Random(42);
+        List<Sweet> sweets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = FLAVOURS[random.nextInt(FLAVOURS.length)] + " " + KINDS[random.nextInt(KINDS.length)]
+                    + " " + (i + 1);
+            sweets.add(Sweet.builder()
+                    .id((long) i + 1)
+                    .name(name)
+                    .category(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .price(BigDecimal.valueOf(random.nextInt(10_000), 2))
+                    .quantity(random.nextInt(500))
+                    .version(0L)
+                    .imageUrl("https://res.cloudinary.com/demo/image/upload/sweets/" + Integer.toHexString(i) + ".jpg")
+                    .imageStatus(ImageStatus.READY)
+                    .build());
+        }
+        return sweets;
+    }
+
+    static List<SweetResponse> responses(int size) {
+        return sweets(size).stream().map(SweetResponse::from).toList();
+    }
+
+    /**
+     * A SweetRepository answering the read methods the catalog uses from a list, with no database.
+     * search() filters in memory the way the SQL does; anything else throws.
+     */
+    static SweetRepository repository(List<SweetResponse> items) {
+        return (SweetRepository) Proxy.newProxyInstance(SweetRepository.class.getClassLoader(),
+                new Class<?>[]{SweetRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findAllResponses" -> new ArrayList<>(items);
+                    case "findResponsesByIdIn" -> {
+                        Set<Object> ids = new HashSet<>((Collection<?>) args[0]);
+                        yield new ArrayList<>(items.stream().filter(s -> ids.contains(s.getId())).toList());
+                    }
+                    case "findResponseById" -> items.stream().filter(s -> s.getId().equals(args[0])).findFirst();
+                    case "search" -> search(items, (SweetSearch) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemorySweetRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static List<SweetResponse> search(List<SweetResponse> items, SweetSearch search) {
+        Stream<SweetResponse> s = items.stream();
+        if (search.getName() != null) {
+            String name = search.getName().toLowerCase(Locale.ROOT);
+            s = s.filter(i -> i.getName().toLowerCase(Locale.ROOT).contains(name));
+        }
+        if (search.getCategory() != null) {
+            s = s.filter(i -> i.getCategory().equalsIgnoreCase(search.getCategory()));
+        }
+        if (search.getMinPrice() != null) {
+            s = s.filter(i -> i.getPrice().compareTo(search.getMinPrice()) >= 0);
+        }
+        if (search.getMaxPrice() != null) {
+            s = s.filter(i -> i.getPrice().compareTo(search.getMaxPrice()) <= 0);
+        }
+        s = s.sorted(Comparator.comparing(SweetResponse::getId)).skip(search.getOffset());
+        if (search.getLimit() != null) {
+            s = s.limit(search.getLimit());
+        }
+        return new ArrayList<>(s.toList());
+    }
+}
@@ -0,0 +1,104 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog search over an in-memory SweetRepository stand-in, so no database time is included.
+ * <p>
+ * The catalog* benchmarks go through CatalogServiceImpl (snapshot plus trigram index), which is what
+ * /search uses while the cache is enabled. The service* benchmarks call SweetServiceImpl.search
+ * directly; there the stand-in's linear filter replaces the SQL, so they mostly show the
+ * per-call overhead around the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    private SweetServiceImpl sweetService;
+    private CatalogServiceImpl catalogService;
+
+    private final SweetSearch byName = SweetSearch.builder().name("pistachio ladoo").limit(50).build();
+    private final SweetSearch typo = SweetSearch.builder().name("pistacho").limit(50).build();
+    private final SweetSearch combined = SweetSearch.builder()
+            .category("Traditional")
+            .minPrice(new BigDecimal("10.00"))
+            .maxPrice(new BigDecimal("40.00"))
+            .sort(SweetSearch.SortField.PRICE)
+            .limit(50)
+            .build();
+
+    @Setup
+    public void setUp() {
+        List<SweetResponse> items = Catalogs.responses(size);
+        SweetRepository repository = Catalogs.repository(items);
+        StockEngine stockEngine = new StockEngine() {
+            @Override
+            public void purchase(Long id, int qty) {
+            }
+
+            @Override
+            public void restock(Long id, int qty) {
+            }
+
+            @Override
+            public void checkout(SortedMap<Long, Integer> lines) {
+            }
+        };
+        sweetService = new SweetServiceImpl(repository, null, stockEngine, event -> { });
+        catalogService = new CatalogServiceImpl(repository, sweetService, stockEngine, new ObjectMapper(),
+                true, 0, 0.5, 20);
+        // build the snapshot and the index outside the measurement
+        catalogService.listAll();
+    }
+
+    @Benchmark
+    public List<SweetResponse> catalogByName() {
+        return catalogService.search(byName);
+    }
+
+    @Benchmark
+    public List<SweetResponse> catalogFuzzyName() {
+        return catalogService.search(typo);
+    }
+
+    @Benchmark
+    public List<SweetResponse> catalogCombinedFilters() {
+        return catalogService.search(combined);
+    }
+
+    @Benchmark
+    public List<SweetResponse> serviceByName() {
+        return sweetService.search(byName);
+    }
+
+    @Benchmark
+    public List<SweetResponse> serviceCombinedFilters() {
+        return sweetService.search(combined);
+    }
+}
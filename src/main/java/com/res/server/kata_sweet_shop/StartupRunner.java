@@ -2,12 +2,14 @@ package com.res.server.kata_sweet_shop;
 
 import com.res.server.kata_sweet_shop.entity.User;
 import com.res.server.kata_sweet_shop.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
 import java.util.HashSet;
 
+@Slf4j
 @Component
 public class StartupRunner implements CommandLineRunner {
 
@@ -32,7 +34,7 @@ public class StartupRunner implements CommandLineRunner {
             admin.getRoles().add("ADMIN");
             admin.getRoles().add("USER");
             userRepository.save(admin);
-            System.out.println("Created default admin/adminpass");
+            log.info("Created default admin/adminpass");
         }
     }
 }
@@ -0,0 +1,103 @@
+package com.res.server.kata_sweet_shop.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets at most a fixed number of threads hold a connection at once; the rest wait in FIFO order on
+ * a fair semaphore before they reach the pool.
+ * <p>
+ * With virtual threads there is no request thread pool left to bound how many callers ask the pool
+ * for a connection. Thousands of them would otherwise spin through HikariCP's hand-off queue and its
+ * timeouts together. Here they park cheaply instead, and a connection freed goes to the longest waiter.
+ * The permit is returned when the connection is closed (handed back to the pool).
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public ConnectionLimitingDataSource(DataSource target, int maxConcurrent, long acquireTimeoutMs) {
+        super(target);
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return limited(super.getConnection());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return limited(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "No database connection available within " + acquireTimeoutMs + " ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", ex);
+        }
+    }
+
+    private Connection limited(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            return invoke(connection, method, args);
+                        } finally {
+                            // closing twice is legal JDBC; release once
+                            if (released.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                        }
+                    }
+                    return invoke(connection, method, args);
+                });
+    }
+
+    private static Object invoke(Connection target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.res.server.kata_sweet_shop.config;
+
+import com.res.server.kata_sweet_shop.service.AdaptiveConcurrencyControl;
+import com.res.server.kata_sweet_shop.service.CatalogServiceImpl;
+import com.res.server.kata_sweet_shop.service.ImageCache;
+import com.res.server.kata_sweet_shop.service.StockStreamService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes the counters the services already keep (LongAdders read on scrape, nothing extra on the
+ * hot path). Request latency, Hikari and Hibernate metrics come from Spring Boot's auto-configuration;
+ * see the management.* properties.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder concurrencyMetrics(AdaptiveConcurrencyControl concurrency) {
+        return registry -> {
+            FunctionCounter.builder("sweetshop.optimistic.lock.conflicts", concurrency, AdaptiveConcurrencyControl::getConflicts)
+                    .description("Optimistic lock failures on sweet updates, retried or not")
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.optimistic.lock.retries", concurrency, AdaptiveConcurrencyControl::getRetries)
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.lock.mode.switches", concurrency, AdaptiveConcurrencyControl::getSwitchesToPessimistic)
+                    .tag("to", "pessimistic")
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.lock.mode.switches", concurrency, AdaptiveConcurrencyControl::getSwitchesToOptimistic)
+                    .tag("to", "optimistic")
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.lock.wait", concurrency, c -> c.getLockWaitNanos() / 1_000_000_000.0)
+                    .description("Total time spent waiting for row locks")
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("sweetshop.lock.pessimistic.sweets", concurrency, AdaptiveConcurrencyControl::getPessimisticSweets)
+                    .description("Sweets currently updated under SELECT ... FOR UPDATE")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder catalogMetrics(CatalogServiceImpl catalog, StockStreamService stream, ImageCache images) {
+        return registry -> {
+            FunctionCounter.builder("sweetshop.catalog.reads", catalog, CatalogServiceImpl::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.catalog.reads", catalog, CatalogServiceImpl::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.catalog.snapshot.patches", catalog, CatalogServiceImpl::getPatches)
+                    .register(registry);
+            FunctionCounter.builder("sweetshop.catalog.snapshot.rebuilds", catalog, CatalogServiceImpl::getRebuilds)
+                    .register(registry);
+            Gauge.builder("sweetshop.stream.subscribers", stream, StockStreamService::getSubscriberCount)
+                    .register(registry);
+            Gauge.builder("sweetshop.image.cache.size", images, ImageCache::getCachedBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package com.res.server.kata_sweet_shop.config;
+
+/**
+ * Phase timings of one profiled request, kept in a ThreadLocal while the request runs.
+ * <p>
+ * Only profiled requests (see {@link RequestTimingFilter}) have one; everywhere else
+ * {@link #current()} is null and the probes cost a ThreadLocal read. The object is a few longs,
+ * with no per-call allocation. Work done on other threads (the coalescing engine's workers, image
+ * uploads) is not seen.
+ */
+public final class RequestTiming {
+
+    public enum Phase {
+        AUTH("auth"), DB("db"), SERIALIZATION("ser");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[PHASES.length];
+    private int dbCalls;
+    private int sqlStatements;
+    // repository methods calling one another are timed once, at the outermost call
+    private int dbDepth;
+    private long handlerStart;
+    // the response usually commits while Jackson flushes, so the header must count a write still in progress
+    private long serializationStart;
+    private long handlerNanos = -1;
+    private boolean admin;
+
+    private RequestTiming() {
+    }
+
+    /** The profile of the request running on this thread, or null if it isn't profiled. */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    static RequestTiming begin() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    public void add(Phase phase, long elapsedNanos) {
+        nanos[phase.ordinal()] += elapsedNanos;
+    }
+
+    /** Returns whether this is the outermost repository call, which is the only one to time. */
+    boolean enterDb() {
+        return dbDepth++ == 0;
+    }
+
+    void exitDb(boolean outermost, long elapsedNanos) {
+        dbDepth--;
+        if (outermost) {
+            dbCalls++;
+            nanos[Phase.DB.ordinal()] += elapsedNanos;
+        }
+    }
+
+    void serializationStarted() {
+        serializationStart = System.nanoTime();
+    }
+
+    void serializationFinished() {
+        nanos[Phase.SERIALIZATION.ordinal()] += System.nanoTime() - serializationStart;
+        serializationStart = 0;
+    }
+
+    void sqlStatement() {
+        sqlStatements++;
+    }
+
+    void handlerStarted(boolean admin) {
+        this.handlerStart = System.nanoTime();
+        this.admin = admin;
+    }
+
+    void handlerFinished() {
+        handlerNanos = System.nanoTime() - handlerStart;
+    }
+
+    boolean isAdmin() {
+        return admin;
+    }
+
+    /**
+     * The timings so far in Server-Timing syntax, e.g.
+     * {@code auth;dur=0.08, controller;dur=1.20, db;dur=3.41;desc="2 calls, 3 SQL", ser;dur=0.35, total;dur=5.10}.
+     * "controller" is the handler's own time: handler time minus DB and serialization.
+     */
+    String format(long now) {
+        StringBuilder out = new StringBuilder(160);
+        long serialization = nanos[Phase.SERIALIZATION.ordinal()]
+                + (serializationStart != 0 ? now - serializationStart : 0);
+        appendMetric(out, Phase.AUTH.metric, nanos[Phase.AUTH.ordinal()]);
+        if (handlerStart != 0) {
+            long handler = handlerNanos >= 0 ? handlerNanos : now - handlerStart;
+            long own = handler - nanos[Phase.DB.ordinal()] - serialization;
+            out.append(", ");
+            appendMetric(out, "controller", Math.max(own, 0));
+        }
+        out.append(", ");
+        appendMetric(out, Phase.DB.metric, nanos[Phase.DB.ordinal()]);
+        out.append(";desc=\"").append(dbCalls).append(" calls, ").append(sqlStatements).append(" SQL\", ");
+        appendMetric(out, Phase.SERIALIZATION.metric, serialization);
+        out.append(", ");
+        appendMetric(out, "total", now - start);
+        return out.toString();
+    }
+
+    // milliseconds with two decimals, without String.format
+    private static void appendMetric(StringBuilder out, String name, long nanos) {
+        long hundredths = nanos / 10_000;
+        out.append(name).append(";dur=").append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
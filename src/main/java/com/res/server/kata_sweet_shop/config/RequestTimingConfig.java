@@ -0,0 +1,116 @@
+package com.res.server.kata_sweet_shop.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.Repository;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * The probes behind {@link RequestTiming}, other than the JWT filter's own and the SQL count
+ * ({@link SqlStatementCounter}): controller time from a handler interceptor, repository calls from an
+ * advisor on every Spring Data repository, and JSON serialization from the Jackson converter. Each is a
+ * ThreadLocal read on requests that aren't profiled.
+ */
+@Configuration
+public class RequestTimingConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                     @NonNull Object handler) {
+                RequestTiming timing = RequestTiming.current();
+                if (timing != null) {
+                    timing.handlerStarted(isAdmin(SecurityContextHolder.getContext().getAuthentication()));
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                        @NonNull Object handler, @Nullable Exception ex) {
+                RequestTiming timing = RequestTiming.current();
+                if (timing != null) {
+                    timing.handlerFinished();
+                }
+            }
+        });
+    }
+
+    // times every repository method, outside the transaction the repository opens, so commits count as DB time
+    @Bean
+    static AbstractAdvisingBeanPostProcessor repositoryTiming() {
+        MethodInterceptor timer = invocation -> {
+            RequestTiming timing = RequestTiming.current();
+            if (timing == null) {
+                return invocation.proceed();
+            }
+            boolean outermost = timing.enterDb();
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                timing.exitDb(outermost, System.nanoTime() - start);
+            }
+        };
+        AbstractAdvisingBeanPostProcessor processor = new AbstractAdvisingBeanPostProcessor() {
+            {
+                // Spring Data repository proxies wrap SimpleJpaRepository, which is a Repository too
+                this.advisor = new DefaultPointcutAdvisor(
+                        new ComposablePointcut(new RootClassFilter(Repository.class)), timer);
+            }
+        };
+        processor.setBeforeExistingAdvisors(true);
+        return processor;
+    }
+
+    /** Replaces Spring Boot's Jackson converter with one that times writing the body. */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(@NonNull Object object, @Nullable Type type, @NonNull HttpOutputMessage outputMessage)
+                    throws IOException, HttpMessageNotWritableException {
+                RequestTiming timing = RequestTiming.current();
+                if (timing == null) {
+                    super.writeInternal(object, type, outputMessage);
+                    return;
+                }
+                timing.serializationStarted();
+                try {
+                    super.writeInternal(object, type, outputMessage);
+                } finally {
+                    timing.serializationFinished();
+                }
+            }
+        };
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        if (authentication == null) {
+            return false;
+        }
+        return authentication.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+    }
+}
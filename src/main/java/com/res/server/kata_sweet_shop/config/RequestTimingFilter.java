@@ -0,0 +1,107 @@
+package com.res.server.kata_sweet_shop.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Profiles a sample of requests (app.timing.sample-rate), plus every request that sends an
+ * X-Request-Timing header, into a {@link RequestTiming}: JWT auth, controller, repository calls
+ * with their SQL count, and JSON serialization.
+ * <p>
+ * Admins get the breakdown back as a Server-Timing header. The header has to go out before the
+ * first byte of the body, so it covers the request up to that point; for most responses, which fit
+ * in the response buffer, that is the whole request. Requests slower than app.timing.slow-request-ms
+ * are logged, with the breakdown when they were profiled. Runs just ahead of Spring Security, so
+ * authentication is part of the measured time.
+ */
+@Slf4j
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+public class RequestTimingFilter extends OncePerRequestFilter {
+
+    static final String OPT_IN_HEADER = "X-Request-Timing";
+
+    private final double sampleRate;
+    private final long slowNanos;
+
+    public RequestTimingFilter(@Value("${app.timing.sample-rate:0.01}") double sampleRate,
+                               @Value("${app.timing.slow-request-ms:1000}") long slowRequestMs) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = slowRequestMs * 1_000_000;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean profiled = request.getHeader(OPT_IN_HEADER) != null
+                || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        if (!profiled) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                logIfSlow(request, response, start, null);
+            }
+            return;
+        }
+        RequestTiming timing = RequestTiming.begin();
+        ServerTimingResponse timed = new ServerTimingResponse(response, timing);
+        try {
+            filterChain.doFilter(request, timed);
+        } finally {
+            RequestTiming.end();
+            // nothing written through the wrapper (empty body, sendfile): the header can still go out
+            if (!response.isCommitted()) {
+                timed.addServerTiming();
+            }
+            logIfSlow(request, response, start, timing);
+        }
+    }
+
+    private void logIfSlow(HttpServletRequest request, HttpServletResponse response, long start, RequestTiming timing) {
+        long now = System.nanoTime();
+        long elapsed = now - start;
+        if (elapsed < slowNanos) {
+            return;
+        }
+        // the path only: query strings may carry search terms or cursors nobody needs in the log
+        log.warn("Slow request: {} {} -> {} in {} ms {}", request.getMethod(), request.getRequestURI(),
+                response.getStatus(), elapsed / 1_000_000, timing == null ? "(not profiled)" : "[" + timing.format(now) + "]");
+    }
+
+    private static final class ServerTimingResponse extends OnCommittedResponseWrapper {
+
+        private final RequestTiming timing;
+
+        private ServerTimingResponse(HttpServletResponse response, RequestTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            addServerTiming();
+        }
+
+        void addServerTiming() {
+            // set by RequestTimingConfig's interceptor once Spring Security has authenticated the caller
+            if (timing.isAdmin()) {
+                setHeader("Server-Timing", timing.format(System.nanoTime()));
+            }
+        }
+    }
+}
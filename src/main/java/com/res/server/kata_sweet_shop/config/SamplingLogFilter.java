@@ -0,0 +1,67 @@
+package com.res.server.kata_sweet_shop.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logback filter that keeps about one in N events of a logger category, for hot-path events that
+ * would otherwise flood the log (and the async queue) under load. Configured in logback-spring.xml
+ * from app.logging.sampling, e.g. {@code com.example.controller=100,com.example.service=10}; the
+ * longest matching prefix wins. WARN and ERROR are never sampled out, and categories not listed pass.
+ * Attached to the AsyncAppender, it runs on the caller's thread (usually a request thread) before the
+ * event is queued, so a dropped event costs that thread one random number and never reaches the queue.
+ */
+public class SamplingLogFilter extends Filter<ILoggingEvent> {
+
+    private String rates = "";
+    private String[] prefixes = new String[0];
+    private int[] every = new int[0];
+
+    public void setRates(String rates) {
+        this.rates = rates;
+    }
+
+    @Override
+    public void start() {
+        record Rate(String prefix, int every) {
+        }
+        List<Rate> parsed = new ArrayList<>();
+        for (String entry : rates.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] kv = entry.trim().split("=", 2);
+            try {
+                parsed.add(new Rate(kv[0].trim(), Math.max(1, Integer.parseInt(kv[1].trim()))));
+            } catch (RuntimeException ex) {
+                addError("Expected category=N in app.logging.sampling, got: " + entry);
+            }
+        }
+        parsed.sort(Comparator.comparingInt((Rate r) -> r.prefix().length()).reversed());
+        prefixes = parsed.stream().map(Rate::prefix).toArray(String[]::new);
+        every = parsed.stream().mapToInt(Rate::every).toArray();
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        String logger = event.getLoggerName();
+        for (int i = 0; i < prefixes.length; i++) {
+            if (logger.startsWith(prefixes[i])) {
+                return every[i] == 1 || ThreadLocalRandom.current().nextInt(every[i]) == 0
+                        ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
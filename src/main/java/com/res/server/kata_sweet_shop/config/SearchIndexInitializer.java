@@ -0,0 +1,48 @@
+package com.res.server.kata_sweet_shop.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Expression indexes for the catalog search, which JPA's @Index can't describe. PostgreSQL only;
+ * other databases (H2 in tests) keep the plain column indexes declared on Sweet.
+ * <p>
+ * The trigram index lets lower(name) LIKE '%x%' use an index instead of a sequential scan. It needs the
+ * pg_trgm extension; without the privilege to create it the search still works, just unindexed.
+ */
+@Slf4j
+@Component
+public class SearchIndexInitializer implements CommandLineRunner {
+
+    private static final List<String> INDEXES = List.of(
+            "create index if not exists idx_sweets_lower_category on sweets (lower(category))",
+            "create index if not exists idx_sweets_lower_name_id on sweets (lower(name), id)",
+            "create extension if not exists pg_trgm",
+            "create index if not exists idx_sweets_name_trgm on sweets using gin (lower(name) gin_trgm_ops)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SearchIndexInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(product)) {
+            return;
+        }
+        for (String ddl : INDEXES) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (RuntimeException ex) {
+                log.warn("Search index not created ({}): {}", ddl, ex.getMessage());
+            }
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.res.server.kata_sweet_shop.config;
 
+import com.res.server.kata_sweet_shop.security.BoundedPasswordEncoder;
 import com.res.server.kata_sweet_shop.security.CustomUserDetailsService;
 import com.res.server.kata_sweet_shop.security.JwtAuthFilter;
 import com.res.server.kata_sweet_shop.security.JwtUtil;
+import com.res.server.kata_sweet_shop.service.ShopMetrics;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -29,21 +40,54 @@ public class SecurityConfig {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final ShopMetrics metrics;
 
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    // /actuator/**: health is public for load balancers; metrics need the scraper's credentials
+    // (HTTP Basic, app.metrics.scrape.*) or an admin JWT
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorFilterChain(HttpSecurity http,
+                                                   @Value("${app.metrics.scrape.username:prometheus}") String scrapeUsername,
+                                                   @Value("${app.metrics.scrape.password:}") String scrapePassword) throws Exception {
+        http.securityMatcher("/actuator/**")
+                .csrf(csrf -> csrf.disable())
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/actuator/prometheus").hasAnyRole("METRICS", "ADMIN")
+                        .requestMatchers("/actuator/loggers/**").hasRole("ADMIN") // runtime log levels, e.g. SQL diagnostics
+                        .anyRequest().denyAll()
+                )
+                .addFilterBefore(new JwtAuthFilter(jwtUtil, userDetailsService, metrics), BasicAuthenticationFilter.class);
+        if (!scrapePassword.isEmpty()) {
+            // not the user table and not the login pool: a scrape must work during a login storm.
+            // The secret is generated, not chosen by a person, so a low BCrypt cost is enough
+            PasswordEncoder scrapeEncoder = new BCryptPasswordEncoder(4);
+            UserDetails scraper = User.withUsername(scrapeUsername)
+                    .password(scrapeEncoder.encode(scrapePassword)).roles("METRICS").build();
+            DaoAuthenticationProvider provider = new DaoAuthenticationProvider(new InMemoryUserDetailsManager(scraper));
+            provider.setPasswordEncoder(scrapeEncoder);
+            http.httpBasic(Customizer.withDefaults()).authenticationManager(new ProviderManager(provider));
+        }
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
 
 
-        JwtAuthFilter jwtFilter = new JwtAuthFilter(jwtUtil, userDetailsService);
+        JwtAuthFilter jwtFilter = new JwtAuthFilter(jwtUtil, userDetailsService, metrics);
 
         http.cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/", "/health").permitAll()
                         .requestMatchers("/api/auth/**", "/api/sweets/all").permitAll()
+                        // paged/streamed catalog and live changes, public like /all (EventSource can't send a token)
+                        .requestMatchers(HttpMethod.GET, "/api/sweets", "/api/sweets/stream").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/images/**").permitAll() // ImageController
                         .requestMatchers("/api/sweets/**").hasAnyRole("USER", "ADMIN") // protect sweets endpoints
                         .requestMatchers("/api/users/**").authenticated() // user profile requires login
                         .anyRequest().denyAll() // block anything else
@@ -57,7 +101,8 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(List.of(frontendUrl));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With", "X-Request-Timing"));
+        configuration.setExposedHeaders(List.of("X-Next-Cursor", "Server-Timing"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L); // 1 hour cache for preflight requests
 
@@ -66,9 +111,13 @@ public class SecurityConfig {
         return source;
     }
 
+    // BCrypt on at most threads cores (0 = half of them); logins beyond threads + queue get a 429
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${app.security.bcrypt.strength:10}") int strength,
+                                           @Value("${app.security.bcrypt.threads:0}") int threads,
+                                           @Value("${app.security.bcrypt.queue:64}") int queue) {
+        int workers = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new BoundedPasswordEncoder(strength, workers, queue);
     }
 
     // Expose AuthenticationManager to be used in AuthController for login
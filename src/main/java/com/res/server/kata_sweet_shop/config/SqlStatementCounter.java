@@ -0,0 +1,20 @@
+package com.res.server.kata_sweet_shop.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares for a profiled request ({@link RequestTiming}).
+ * Registered through spring.jpa.properties.hibernate.session_factory.statement_inspector;
+ * Hibernate creates it, so it reaches the request through the ThreadLocal.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            timing.sqlStatement();
+        }
+        return sql;
+    }
+}
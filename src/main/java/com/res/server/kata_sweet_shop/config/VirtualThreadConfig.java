@@ -0,0 +1,38 @@
+package com.res.server.kata_sweet_shop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Extra wiring for spring.threads.virtual.enabled=true. Spring Boot itself moves Tomcat's request
+ * handling, @Async and scheduled tasks onto virtual threads; this puts a
+ * {@link ConnectionLimitingDataSource} in front of the pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    static BeanPostProcessor connectionLimiter(
+            @Value("${app.datasource.max-concurrent:0}") int maxConcurrent,
+            @Value("${app.datasource.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConnectionLimitingDataSource) {
+                    return bean;
+                }
+                // by default, as many as the pool has connections
+                int permits = maxConcurrent > 0 ? maxConcurrent
+                        : bean instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+                return new ConnectionLimitingDataSource(dataSource, permits, acquireTimeoutMs);
+            }
+        };
+    }
+}
@@ -5,14 +5,16 @@ import com.res.server.kata_sweet_shop.dto.AuthResponse;
 import com.res.server.kata_sweet_shop.dto.LoginRequest;
 import com.res.server.kata_sweet_shop.dto.RegisterRequest;
 import com.res.server.kata_sweet_shop.entity.User;
-import com.res.server.kata_sweet_shop.repository.UserRepository;
 import com.res.server.kata_sweet_shop.security.JwtUtil;
 import com.res.server.kata_sweet_shop.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.*;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
@@ -20,13 +22,11 @@ public class AuthController {
     private final AuthenticationManager authManager;
     private final JwtUtil jwtUtil;
     private final UserService userService;
-    private final UserRepository userRepository;
 
-    public AuthController(AuthenticationManager authManager, JwtUtil jwtUtil, UserService userService, UserRepository userRepository) {
+    public AuthController(AuthenticationManager authManager, JwtUtil jwtUtil, UserService userService) {
         this.authManager = authManager;
         this.jwtUtil = jwtUtil;
         this.userService = userService;
-        this.userRepository = userRepository;
     }
 
     @PostMapping("/register")
@@ -38,9 +38,13 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<AuthResponse> login(@RequestBody LoginRequest request) {
         Authentication auth = authManager.authenticate(new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
-        // authentication successful
-        User u = userRepository.findByUsername(request.getUsername()).orElseThrow();
-        String token = jwtUtil.generateToken(u.getUsername(), u.getRoles());
+        // authentication successful; the principal is the user CustomUserDetailsService loaded,
+        // so the roles come from there instead of a second lookup
+        List<String> roles = auth.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .map(a -> a.startsWith("ROLE_") ? a.substring("ROLE_".length()) : a)
+                .toList();
+        String token = jwtUtil.generateToken(auth.getName(), roles);
         return ResponseEntity.ok(new AuthResponse(token, "Bearer") );
     }
 }
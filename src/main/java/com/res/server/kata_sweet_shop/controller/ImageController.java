@@ -0,0 +1,133 @@
+package com.res.server.kata_sweet_shop.controller;
+
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.service.CachedImage;
+import com.res.server.kata_sweet_shop.service.ImageCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serves images from the local ImageCache: GET /images/{sha256}[-thumb|-webp][.ext].
+ * <p>
+ * The content behind a name never changes, so responses are cacheable for a year and the name is
+ * the ETag. A single byte range is honoured (If-Range included); multiple ranges get the whole file.
+ * On Tomcat the body goes out with sendfile, straight from the page cache to the socket; elsewhere
+ * it is written with FileChannel.transferTo.
+ */
+@RestController
+@RequestMapping("/images")
+@RequiredArgsConstructor
+public class ImageController {
+
+    // request attributes of Tomcat's sendfile support, as used by its DefaultServlet
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+
+    private final ImageCache imageCache;
+
+    @GetMapping("/{name}")
+    public void image(@PathVariable String name, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        CachedImage image = imageCache.get(name)
+                .orElseThrow(() -> new ResourceNotFoundException("Image not found: " + name));
+        String etag = "\"" + image.key() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        response.setContentType(image.contentType());
+
+        long length = image.length();
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges = parse(range);
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat opens the file and sends it after this method returns
+            request.setAttribute(SENDFILE_FILENAME, image.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel file = FileChannel.open(image.file(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (count > 0) {
+                long sent = file.transferTo(position, count, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a malformed Range header is ignored, as RFC 9110 allows
+    private static List<HttpRange> parse(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException ex) {
+            return List.of();
+        }
+    }
+}
@@ -1,25 +1,42 @@
 package com.res.server.kata_sweet_shop.controller;
 
+import com.res.server.kata_sweet_shop.dto.CartItem;
 import com.res.server.kata_sweet_shop.dto.PurchaseRequest;
+import com.res.server.kata_sweet_shop.dto.SearchCursor;
 import com.res.server.kata_sweet_shop.dto.SweetRequest;
 import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
 import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.service.CatalogExporter;
+import com.res.server.kata_sweet_shop.service.CatalogService;
+import com.res.server.kata_sweet_shop.service.EncodedCatalog;
+import com.res.server.kata_sweet_shop.service.StockStreamService;
 import com.res.server.kata_sweet_shop.service.ImageService;
+import com.res.server.kata_sweet_shop.service.ShopMetrics;
 import com.res.server.kata_sweet_shop.service.SweetService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/sweets")
 @RequiredArgsConstructor
@@ -27,16 +44,132 @@ public class SweetController {
 
     private final ImageService imageService;
     private final SweetService sweetService;
+    private final CatalogService catalogService;
+    private final CatalogExporter catalogExporter;
+    private final StockStreamService stockStreamService;
+    private final ShopMetrics metrics;
     @GetMapping("/all")
-    public List<SweetResponse> all() {System.out.println("Fetching all sweets");
-        return sweetService.listAll().stream().map(this::toResp).collect(Collectors.toList());
+    public ResponseEntity<byte[]> all(WebRequest request) {
+        log.debug("Fetching all sweets");
+        // the body is serialized and compressed once per catalog version and written as is;
+        // the two encodings are different bytes, so they get different ETags
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String etag = catalogService.version() + (gzip ? "-gzip" : "");
+        if (request.checkNotModified(etag, catalogService.lastModified())) {
+            return null;
+        }
+        EncodedCatalog body = catalogService.encodedAll();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip());
+        }
+        return response.body(body.json());
     }
+    // keyset paging by id: pass the X-Next-Cursor of a full page as "after" to get the next one
+    @GetMapping
+    public ResponseEntity<List<SweetResponse>> page(@RequestParam Optional<Long> after,
+                                                    @RequestParam(defaultValue = "100") int limit,
+                                                    WebRequest request) {
+        if (notModified(request)) {
+            return null;
+        }
+        List<SweetResponse> page = catalogService.page(after.orElse(null), limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        if (page.size() == limit) {
+            response.header("X-Next-Cursor", String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    // the whole catalog as NDJSON, streamed from a DB cursor without building a list
+    @GetMapping(params = "format=ndjson")
+    public ResponseEntity<StreamingResponseBody> export(WebRequest request) {
+        if (notModified(request)) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache())
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(catalogExporter::writeNdjson);
+    }
+
+    // live stock and price changes as Server-Sent Events: a "ready" event with the catalog version,
+    // then "changes" events carrying a JSON array of SweetDelta
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return stockStreamService.subscribe()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many live subscribers"));
+    }
+
+    // every filter given applies; sort is id, name or price ("-price" for descending).
+    // A full page carries X-Next-Cursor, to be passed back as "after" for the next one
     @GetMapping("/search")
-    public List<SweetResponse> search(@RequestParam Optional<String> name,
-                                      @RequestParam Optional<String> category,
-                                      @RequestParam Optional<BigDecimal> minPrice,
-                                      @RequestParam Optional<BigDecimal> maxPrice) {
-        return sweetService.search(name, category, minPrice, maxPrice).stream().map(this::toResp).collect(Collectors.toList());
+    public ResponseEntity<List<SweetResponse>> search(@RequestParam Optional<String> name,
+                                                      @RequestParam Optional<String> category,
+                                                      @RequestParam Optional<BigDecimal> minPrice,
+                                                      @RequestParam Optional<BigDecimal> maxPrice,
+                                                      @RequestParam Optional<String> sort,
+                                                      @RequestParam Optional<Integer> limit,
+                                                      @RequestParam(defaultValue = "0") int offset,
+                                                      @RequestParam Optional<String> after,
+                                                      WebRequest request) {
+        if (notModified(request)) {
+            return null;
+        }
+        SweetSearch search = SweetSearch.builder()
+                .name(name.filter(n -> !n.isBlank()).orElse(null))
+                .category(category.filter(c -> !c.isBlank()).orElse(null))
+                .minPrice(minPrice.orElse(null))
+                .maxPrice(maxPrice.orElse(null))
+                .sort(sort.map(SweetSearch.SortField::of).orElse(null))
+                .descending(sort.map(s -> s.startsWith("-")).orElse(false))
+                .limit(limit.orElse(null))
+                .offset(offset)
+                .after(after.map(SearchCursor::decode).orElse(null))
+                .build();
+        List<SweetResponse> page = catalogService.search(search);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        if (search.getLimit() != null && page.size() == search.getLimit() && !search.byRelevance()) {
+            SweetResponse last = page.get(page.size() - 1);
+            response.header("X-Next-Cursor", SearchCursor.after(last, search.sortOrDefault()).encode());
+        }
+        return response.body(page);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<SweetResponse> get(@PathVariable Long id, WebRequest request) {
+        if (notModified(request)) {
+            return null;
+        }
+        SweetResponse sweet = catalogService.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(sweet);
+    }
+
+    /**
+     * Conditional GET on the catalog version: when the client's If-None-Match (or If-Modified-Since)
+     * still matches, Spring answers 304 and we skip the catalog and Jackson entirely. Otherwise the
+     * ETag and Last-Modified headers are set for the 200.
+     */
+    private boolean notModified(WebRequest request) {
+        return request.checkNotModified(String.valueOf(catalogService.version()), catalogService.lastModified());
+    }
+
+    // gzip listed without q=0 (a bare "*" counts too)
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            if (coding.equalsIgnoreCase("gzip") || coding.equals("*")) {
+                return tokens.length < 2 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 
     @PostMapping(value = "/add", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -44,17 +177,15 @@ public class SweetController {
     public ResponseEntity<SweetResponse> create(
             @RequestPart("sweet") @Valid SweetRequest req,
             @RequestPart("image") MultipartFile imageFile) throws IOException {
-        String imageUrl = imageService.uploadImage(imageFile);
-        req.setImageUrl(imageUrl);
-        Sweet s = sweetService.create(req);
-        return ResponseEntity.ok(toResp(s));
+        // saved at once with imageStatus PENDING; the URL follows when the background upload is done
+        Sweet s = imageService.createWithImage(req, imageFile);
+        return ResponseEntity.ok(SweetResponse.from(s));
     }
     @PutMapping("/update/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<SweetResponse> update(@PathVariable Long id, @RequestBody SweetRequest req) {
-        System.out.println("Updating Sweet with ID: " + id);
         Sweet s = sweetService.update(id, req);
-        return ResponseEntity.ok(toResp(s));
+        return ResponseEntity.ok(SweetResponse.from(s));
     }
     @DeleteMapping("/delete/{id}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -68,23 +199,21 @@ public class SweetController {
     // but usually purchase user karta hai
     public ResponseEntity<?> purchase(@PathVariable Long id, @RequestBody PurchaseRequest request) {
         sweetService.purchasesweet(id, request.getQuantity());
+        metrics.purchased(id, request.getQuantity());
         return ResponseEntity.ok("Purchased");
     }
+    // whole basket in one transaction: either every item is bought or none
+    @PostMapping("/checkout")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> checkout(@RequestBody List<CartItem> items) {
+        sweetService.checkout(items);
+        items.forEach(item -> metrics.purchased(item.getId(), item.getQuantity()));
+        return ResponseEntity.ok("Checked out");
+    }
     @PostMapping("/restock/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> restock(@PathVariable Long id, @RequestBody PurchaseRequest request) {
         sweetService.restock(id, request.getQuantity());
         return ResponseEntity.ok("Restocked");
     }
-
-    private SweetResponse toResp(Sweet s) {
-        SweetResponse response = new SweetResponse();
-        response.setId(s.getId());
-        response.setName(s.getName());
-        response.setCategory(s.getCategory());
-        response.setPrice(s.getPrice());
-        response.setQuantity(s.getQuantity());
-        response.setImageUrl(s.getImageUrl()); // Use getImageUrl() for consistency
-        return response;
-    }
-}
\ No newline at end of file
+}
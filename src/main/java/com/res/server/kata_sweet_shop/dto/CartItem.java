@@ -0,0 +1,16 @@
+package com.res.server.kata_sweet_shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a checkout basket.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItem {
+    private Long id;
+    private Integer quantity;
+}
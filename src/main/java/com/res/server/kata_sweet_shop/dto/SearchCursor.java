@@ -0,0 +1,43 @@
+package com.res.server.kata_sweet_shop.dto;
+
+import com.res.server.kata_sweet_shop.exception.InvalidRequestException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position: the sort key and id of the last item of a page. Sent to clients as an opaque
+ * token, so that the next page starts right after that item instead of re-reading and skipping.
+ */
+public record SearchCursor(String key, long id) {
+
+    public static SearchCursor after(SweetResponse last, SweetSearch.SortField sort) {
+        Object key = sort.keyOf(last);
+        String text = key instanceof BigDecimal price ? price.toPlainString() : key.toString();
+        return new SearchCursor(text, last.getId());
+    }
+
+    public Comparable<?> key(SweetSearch.SortField sort) {
+        try {
+            return sort.parse(key);
+        } catch (NumberFormatException ex) {
+            throw new InvalidRequestException("Cursor does not match the sort");
+        }
+    }
+
+    public String encode() {
+        byte[] raw = (id + ":" + key).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    public static SearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new SearchCursor(raw.substring(colon + 1), Long.parseLong(raw.substring(0, colon)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.res.server.kata_sweet_shop.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+/**
+ * One entry of the live change stream: the current stock and price of a sweet,
+ * or {"id":..,"deleted":true} once it is gone. Always absolute values, so a client
+ * that missed intermediate updates still ends up right.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SweetDelta(Long id, Integer quantity, BigDecimal price, Boolean deleted) {
+
+    public static SweetDelta of(SweetResponse s) {
+        return new SweetDelta(s.getId(), s.getQuantity(), s.getPrice(), null);
+    }
+
+    public static SweetDelta deleted(Long id) {
+        return new SweetDelta(id, null, null, true);
+    }
+}
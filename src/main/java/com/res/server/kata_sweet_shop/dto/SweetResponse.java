@@ -1,9 +1,15 @@
 package com.res.server.kata_sweet_shop.dto;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor // used by the JPQL constructor projections in SweetRepository; keep the field order
 public class SweetResponse {
     private Long id;
     private String name;
@@ -11,5 +17,27 @@ public class SweetResponse {
     private BigDecimal price;
     private Integer quantity;
     private String imageUrl; // add this
+    // small variants made at upload time; list pages should prefer these over imageUrl
+    private String thumbnailUrl;
+    private String webpUrl;
+    private ImageStatus imageStatus;
 
+    public static SweetResponse from(Sweet s) {
+        SweetResponse response = new SweetResponse();
+        response.setId(s.getId());
+        response.setName(s.getName());
+        response.setCategory(s.getCategory());
+        response.setPrice(s.getPrice());
+        response.setQuantity(s.getQuantity());
+        response.setImageUrl(s.getImageUrl()); // Use getImageUrl() for consistency
+        response.setThumbnailUrl(s.getThumbnailUrl());
+        response.setWebpUrl(s.getWebpUrl());
+        response.setImageStatus(s.getImageStatus());
+        return response;
+    }
+
+    // copy with a different stock level, used when patching cached catalog entries
+    public SweetResponse withQuantity(Integer quantity) {
+        return new SweetResponse(id, name, category, price, quantity, imageUrl, thumbnailUrl, webpUrl, imageStatus);
+    }
 }
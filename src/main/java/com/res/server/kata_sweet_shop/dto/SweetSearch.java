@@ -0,0 +1,107 @@
+package com.res.server.kata_sweet_shop.dto;
+
+import com.res.server.kata_sweet_shop.exception.InvalidRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Catalog search: every filter that is set applies (AND), then sort, then cursor/offset and limit.
+ * Name matches ignore case; the category has to match exactly, ignoring case; price bounds are inclusive.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class SweetSearch {
+
+    public static final int MAX_LIMIT = 1000;
+
+    private String name;
+    private String category;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    // null: by relevance when searching by name without a cursor, by id otherwise
+    private SortField sort;
+    private boolean descending;
+    private Integer limit;
+    private int offset;
+    // keyset cursor from the previous page; the sort has to be the same as for that page
+    private SearchCursor after;
+
+    public boolean byRelevance() {
+        return sort == null && name != null && after == null;
+    }
+
+    public SortField sortOrDefault() {
+        return sort == null ? SortField.ID : sort;
+    }
+
+    public void validate() {
+        if (limit != null && (limit <= 0 || limit > MAX_LIMIT)) {
+            throw new InvalidRequestException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (offset < 0) {
+            throw new InvalidRequestException("offset must not be negative");
+        }
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            throw new InvalidRequestException("minPrice must not be greater than maxPrice");
+        }
+    }
+
+    /** Sort keys; names sort case-insensitively, ties are broken by id in the same direction. */
+    public enum SortField {
+        ID {
+            @Override
+            public Comparable<?> keyOf(SweetResponse s) {
+                return s.getId();
+            }
+
+            @Override
+            public Comparable<?> parse(String value) {
+                return Long.valueOf(value);
+            }
+        },
+        NAME {
+            @Override
+            public Comparable<?> keyOf(SweetResponse s) {
+                return s.getName() == null ? "" : s.getName().toLowerCase(Locale.ROOT);
+            }
+
+            @Override
+            public Comparable<?> parse(String value) {
+                return value;
+            }
+        },
+        PRICE {
+            @Override
+            public Comparable<?> keyOf(SweetResponse s) {
+                return s.getPrice() == null ? BigDecimal.ZERO : s.getPrice();
+            }
+
+            @Override
+            public Comparable<?> parse(String value) {
+                return new BigDecimal(value);
+            }
+        };
+
+        public abstract Comparable<?> keyOf(SweetResponse s);
+
+        /** Reads a key written into a SearchCursor. */
+        public abstract Comparable<?> parse(String value);
+
+        /** "price" or "-price" for descending; the caller reads the sign. */
+        public static SortField of(String param) {
+            String field = param.startsWith("-") ? param.substring(1) : param;
+            try {
+                return valueOf(field.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new InvalidRequestException("Unknown sort field: " + field);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.res.server.kata_sweet_shop.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * An image we already hold in storage, keyed by the SHA-256 of its bytes.
+ * Uploading the same bytes again reuses these URLs instead of storing another copy.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "image_assets")
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImageAsset {
+    @Id
+    @Column(length = 64)
+    private String hash; // lowercase hex
+    private String contentType;
+    private Long size;
+    private String url;
+    private String thumbnailUrl;
+    private String webpUrl; // null when no WebP encoder is available
+}
@@ -0,0 +1,11 @@
+package com.res.server.kata_sweet_shop.entity;
+
+/**
+ * Where a sweet's image is: uploads run in the background after the sweet is saved.
+ */
+public enum ImageStatus {
+    NONE,
+    PENDING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,24 @@
+package com.res.server.kata_sweet_shop.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+/**
+ * Single-row table recording the last stock journal segment whose deltas are in the sweets table.
+ * It is written in the same transaction as the deltas, so replay after a crash never applies a segment twice.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "ledger_checkpoint")
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerCheckpoint {
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    private Integer id;
+    private Long lastFlushedSegment;
+}
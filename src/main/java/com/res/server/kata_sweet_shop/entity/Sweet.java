@@ -2,12 +2,18 @@ package com.res.server.kata_sweet_shop.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.math.BigDecimal;
 @Getter
 @Setter
 @Entity
-@Table(name = "sweets")
+// lower(category) and lower(name) need expression indexes, created by SearchIndexInitializer on PostgreSQL
+@Table(name = "sweets", indexes = {
+        @Index(name = "idx_sweets_category", columnList = "category"),
+        @Index(name = "idx_sweets_price_id", columnList = "price, id")
+})
+@DynamicUpdate // only changed columns are written, so an entity update doesn't overwrite stock moved by another path
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
@@ -27,5 +33,10 @@ public class Sweet {
     // and the other user will receive an error indicating that the entity has been modified by another transaction.
     private Long version;
     private String imageUrl;
+    private String thumbnailUrl;
+    private String webpUrl;
+    private String imageHash; // SHA-256 of the uploaded bytes, see ImageAsset
+    @Enumerated(EnumType.STRING)
+    private ImageStatus imageStatus;
 
 }
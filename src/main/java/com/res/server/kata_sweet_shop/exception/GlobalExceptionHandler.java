@@ -1,5 +1,8 @@
 package com.res.server.kata_sweet_shop.exception;
 
+import com.res.server.kata_sweet_shop.service.ShopMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -14,7 +17,11 @@ import java.util.Map;
  * Returns structured error responses for validation failures.
  */
 @RestControllerAdvice
+@RequiredArgsConstructor
 public class GlobalExceptionHandler {
+
+    private final ShopMetrics metrics;
+
     /**
      * Handles validation errors and returns a 400 Bad Request with field-specific messages.
      */
@@ -26,4 +33,54 @@ public class GlobalExceptionHandler {
         );
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errors);
     }
+
+    /**
+     * Invalid input caught by the services (bad quantities, search parameters, cursors). Only this
+     * type: any other IllegalArgumentException is a bug on our side, not the client's.
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidRequest(InvalidRequestException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error(ex, "Invalid request"));
+    }
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(ResourceNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error(ex, "Not found"));
+    }
+
+    // sold out, or not enough left for the requested quantity
+    @ExceptionHandler(InsufficientStockException.class)
+    public ResponseEntity<Map<String, String>> handleInsufficientStock(InsufficientStockException ex) {
+        metrics.insufficientStock();
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error(ex, "Not enough stock"));
+    }
+
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<Map<String, String>> handleBusy(ServiceBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body(error(ex, "Service busy, please retry"));
+    }
+
+    // password hashing is saturated (login or registration storm)
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Map<String, String>> handleTooManyRequests(TooManyRequestsException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", "1")
+                .body(error(ex, "Too many requests, please retry"));
+    }
+
+    /**
+     * A sweet kept changing under us even after the bounded retries; the client may try again.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> handleOptimisticLock(OptimisticLockingFailureException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Sweet was modified concurrently, please retry"));
+    }
+
+    // Map.of rejects nulls, and an exception may carry no message
+    private static Map<String, String> error(RuntimeException ex, String fallback) {
+        return Map.of("error", ex.getMessage() != null ? ex.getMessage() : fallback);
+    }
 }
@@ -0,0 +1,9 @@
+package com.res.server.kata_sweet_shop.exception;
+
+/**
+ * Input a client sent that the services reject (bad quantities, search parameters, cursors); answered with 400.
+ * Still an IllegalArgumentException for callers that check for one.
+ */
+public class InvalidRequestException extends IllegalArgumentException {
+    public InvalidRequestException(String msg) { super(msg); }
+}
@@ -0,0 +1,8 @@
+package com.res.server.kata_sweet_shop.exception;
+
+/**
+ * A bounded resource (e.g. the image upload queue) is full; the client should retry later.
+ */
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String msg) { super(msg); }
+}
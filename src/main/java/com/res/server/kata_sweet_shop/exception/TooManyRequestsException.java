@@ -0,0 +1,8 @@
+package com.res.server.kata_sweet_shop.exception;
+
+/**
+ * Too much work of one kind is already queued (e.g. password hashing); the client should back off.
+ */
+public class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(String msg) { super(msg); }
+}
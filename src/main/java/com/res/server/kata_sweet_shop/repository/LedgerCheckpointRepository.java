@@ -0,0 +1,9 @@
+package com.res.server.kata_sweet_shop.repository;
+
+import com.res.server.kata_sweet_shop.entity.LedgerCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LedgerCheckpointRepository extends JpaRepository<LedgerCheckpoint, Integer> {
+}
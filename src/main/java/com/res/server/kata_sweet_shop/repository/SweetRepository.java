@@ -1,20 +1,71 @@
 package com.res.server.kata_sweet_shop.repository;
 
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
 import com.res.server.kata_sweet_shop.entity.Sweet;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 @Repository
-public interface SweetRepository extends JpaRepository<Sweet, Long> {
-    List<Sweet> findByNameContainingIgnoreCase(String name);
-    List<Sweet>findByCategoryIgnoreCase(String category);
+public interface SweetRepository extends JpaRepository<Sweet, Long>, SweetSearchRepository {
 
-    // find by price less than or equal to a given value
-    @Query("select s from Sweet s where s.price between :min and :max")
-    List<Sweet>findByPriceRange(@Param("min")BigDecimal min, @Param("max")BigDecimal max);
+    String SELECT_RESPONSE = "select new com.res.server.kata_sweet_shop.dto.SweetResponse("
+            + "s.id, s.name, s.category, s.price, s.quantity, s.imageUrl, s.thumbnailUrl, s.webpUrl, s.imageStatus) from Sweet s";
+
+    // projections: rows go straight into SweetResponse, nothing enters the persistence context
+    @Transactional(readOnly = true)
+    @Query(SELECT_RESPONSE + " order by s.id")
+    List<SweetResponse> findAllResponses();
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_RESPONSE + " where s.id = :id")
+    Optional<SweetResponse> findResponseById(@Param("id") Long id);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_RESPONSE + " where s.id in :ids")
+    List<SweetResponse> findResponsesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Decrements stock in a single conditional UPDATE.
+     * Returns 1 when the sale went through, 0 when the sweet is missing or has less than qty left.
+     * The version is bumped so concurrent entity updates still see the change.
+     */
+    @Modifying
+    @Query("update Sweet s set s.quantity = s.quantity - :qty, s.version = s.version + 1 " +
+            "where s.id = :id and s.quantity >= :qty")
+    int decrementStock(@Param("id") Long id, @Param("qty") int qty);
+
+    /**
+     * Increments stock in a single UPDATE. Returns 0 when the sweet does not exist.
+     */
+    @Modifying
+    @Query("update Sweet s set s.quantity = s.quantity + :qty, s.version = s.version + 1 where s.id = :id")
+    int incrementStock(@Param("id") Long id, @Param("qty") int qty);
+
+    // SELECT ... FOR UPDATE, used for sweets that are too contended for optimistic locking
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from Sweet s where s.id = :id")
+    Optional<Sweet> findByIdForUpdate(@Param("id") Long id);
+
+    // background image uploads report back here; the version bump makes a concurrent edit retry
+    @Transactional
+    @Modifying
+    @Query("update Sweet s set s.imageUrl = :url, s.thumbnailUrl = :thumbnailUrl, s.webpUrl = :webpUrl, "
+            + "s.imageHash = :hash, s.imageStatus = :status, s.version = s.version + 1 where s.id = :id")
+    int updateImage(@Param("id") Long id, @Param("url") String url, @Param("thumbnailUrl") String thumbnailUrl,
+                    @Param("webpUrl") String webpUrl, @Param("hash") String hash, @Param("status") ImageStatus status);
+
+    // only used on the failure path of decrementStock to tell "not found" from "insufficient stock"
+    @Query("select s.quantity from Sweet s where s.id = :id")
+    Optional<Integer> findQuantityById(@Param("id") Long id);
 
 }
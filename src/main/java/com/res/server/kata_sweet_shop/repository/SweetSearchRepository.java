@@ -0,0 +1,14 @@
+package com.res.server.kata_sweet_shop.repository;
+
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+
+import java.util.List;
+
+/**
+ * Catalog search as a single SQL statement, mixed into {@link SweetRepository}.
+ * Results are projected straight into SweetResponse.
+ */
+public interface SweetSearchRepository {
+    List<SweetResponse> search(SweetSearch search);
+}
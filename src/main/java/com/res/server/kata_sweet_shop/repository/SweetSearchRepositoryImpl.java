@@ -0,0 +1,98 @@
+package com.res.server.kata_sweet_shop.repository;
+
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the WHERE clause from whichever filters are set, so name, category and price narrow the
+ * result together. Pages use a keyset condition on (sort key, id) when a cursor is given, which
+ * keeps deep pages as cheap as the first one; plain offsets still work for small jumps.
+ */
+class SweetSearchRepositoryImpl implements SweetSearchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<SweetResponse> search(SweetSearch search) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SweetResponse> query = cb.createQuery(SweetResponse.class);
+        Root<Sweet> sweet = query.from(Sweet.class);
+        Path<Long> id = sweet.get("id");
+        query.select(cb.construct(SweetResponse.class, id, sweet.get("name"), sweet.get("category"),
+                sweet.get("price"), sweet.get("quantity"), sweet.get("imageUrl"), sweet.get("thumbnailUrl"),
+                sweet.get("webpUrl"), sweet.get("imageStatus")));
+
+        List<Predicate> where = new ArrayList<>();
+        if (search.getName() != null) {
+            where.add(cb.like(cb.lower(sweet.get("name")), "%" + escapeLike(lower(search.getName())) + "%", '\\'));
+        }
+        if (search.getCategory() != null) {
+            where.add(cb.equal(cb.lower(sweet.get("category")), lower(search.getCategory())));
+        }
+        if (search.getMinPrice() != null) {
+            where.add(cb.greaterThanOrEqualTo(sweet.get("price"), search.getMinPrice()));
+        }
+        if (search.getMaxPrice() != null) {
+            where.add(cb.lessThanOrEqualTo(sweet.get("price"), search.getMaxPrice()));
+        }
+
+        boolean desc = search.isDescending();
+        SweetSearch.SortField sort = search.sortOrDefault();
+        if (search.getAfter() != null) {
+            Object key = search.getAfter().key(sort);
+            long lastId = search.getAfter().id();
+            where.add(switch (sort) {
+                case ID -> desc ? cb.lessThan(id, lastId) : cb.greaterThan(id, lastId);
+                case NAME -> after(cb, cb.lower(sweet.get("name")), (String) key, id, lastId, desc);
+                case PRICE -> after(cb, sweet.get("price"), (BigDecimal) key, id, lastId, desc);
+            });
+        }
+        query.where(where.toArray(new Predicate[0]));
+
+        Expression<?> key = switch (sort) {
+            case ID -> id;
+            case NAME -> cb.lower(sweet.get("name"));
+            case PRICE -> sweet.get("price");
+        };
+        query.orderBy(desc ? List.of(cb.desc(key), cb.desc(id)) : List.of(cb.asc(key), cb.asc(id)));
+
+        TypedQuery<SweetResponse> typed = entityManager.createQuery(query);
+        typed.setFirstResult(search.getOffset());
+        if (search.getLimit() != null) {
+            typed.setMaxResults(search.getLimit());
+        }
+        return typed.getResultList();
+    }
+
+    // (key, id) strictly past the cursor in the sort direction
+    private static <Y extends Comparable<? super Y>> Predicate after(CriteriaBuilder cb, Expression<Y> key, Y value,
+                                                                   Path<Long> id, long lastId, boolean desc) {
+        Predicate beyond = desc ? cb.lessThan(key, value) : cb.greaterThan(key, value);
+        Predicate tie = cb.and(cb.equal(key, value), desc ? cb.lessThan(id, lastId) : cb.greaterThan(id, lastId));
+        return cb.or(beyond, tie);
+    }
+
+    private static String lower(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -2,12 +2,23 @@ package com.res.server.kata_sweet_shop.repository;
 
 import com.res.server.kata_sweet_shop.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+    // user and roles in one query; the derived finder reads the EAGER roles with a second select
+    @Query("select u from User u left join fetch u.roles where u.username = :username")
+    Optional<User> findWithRolesByUsername(String username);
+    // re-hash at login: only the password column, without loading the user
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password where u.username = :username")
+    int updatePassword(String username, String password);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
 }
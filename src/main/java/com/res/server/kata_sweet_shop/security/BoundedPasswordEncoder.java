@@ -0,0 +1,87 @@
+package com.res.server.kata_sweet_shop.security;
+
+import com.res.server.kata_sweet_shop.exception.TooManyRequestsException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BCrypt on a small dedicated pool, so a login or registration storm can use at most that many
+ * cores and the rest stay free for purchases and catalog reads.
+ * <p>
+ * Callers wait for their hash on the pool. At most threads + queue hashes are queued or running;
+ * past that, encode and matches fail fast with TooManyRequestsException (429) instead of queueing
+ * without bound. Hashes made with a different cost than the configured one report
+ * upgradeEncoding, and Spring Security re-hashes them on the next successful login (see
+ * CustomUserDetailsService.updatePassword), so the cost can be tuned up or down without resets.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final int strength;
+    private final ExecutorService pool;
+    // one permit per hash that is queued or running
+    private final Semaphore slots;
+
+    public BoundedPasswordEncoder(int strength, int threads, int queue) {
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        // CPU-bound work: platform threads, never virtual ones
+        this.pool = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("bcrypt-", 0).daemon(true).factory());
+        this.slots = new Semaphore(threads + queue);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    // reads the cost from the hash ("$2a$10$..."); no hashing, so it stays on the caller's thread
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(3) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6)) != strength;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private <T> T run(Callable<T> hashing) {
+        if (!slots.tryAcquire()) {
+            throw new TooManyRequestsException("Too many logins in progress, please retry");
+        }
+        try {
+            return pool.submit(hashing).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            slots.release();
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -3,30 +3,70 @@ package com.res.server.kata_sweet_shop.security;
 
 import com.res.server.kata_sweet_shop.entity.User;
 import com.res.server.kata_sweet_shop.repository.UserRepository;
+import com.res.server.kata_sweet_shop.service.UserChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Loads users with their roles in one query and keeps them in a bounded cache for ttl-ms, so
+ * repeated logins skip the database. Entries are dropped when a UserChangedEvent is committed; the
+ * TTL bounds how stale a change made by another instance can get.
+ * <p>
+ * Every call returns a new UserDetails: Spring Security erases the password of the one it
+ * authenticated, which must not reach the cached copy.
+ * <p>
+ * As the UserDetailsPasswordService, it stores the new hash when a login finds one made with an
+ * outdated BCrypt cost (see BoundedPasswordEncoder).
+ */
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
+    private final ExpiringCache<String, CachedUser> cache;
+    private final long ttlMs;
 
-    public CustomUserDetailsService(UserRepository repo) {
+    public CustomUserDetailsService(UserRepository repo,
+                                    @Value("${app.security.user-cache.size:10000}") int cacheSize,
+                                    @Value("${app.security.user-cache.ttl-ms:300000}") long ttlMs) {
         this.userRepository = repo;
+        this.cache = new ExpiringCache<>(cacheSize);
+        this.ttlMs = ttlMs;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User u = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-        Set<GrantedAuthority> authorities = u.getRoles().stream()
-                .map(r -> new SimpleGrantedAuthority("ROLE_" + r))
-                .collect(Collectors.toSet());
-        return new org.springframework.security.core.userdetails.User(u.getUsername(), u.getPassword(), authorities);
+        CachedUser cached = cache.get(username);
+        if (cached == null) {
+            User u = userRepository.findWithRolesByUsername(username)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+            Set<GrantedAuthority> authorities = u.getRoles().stream()
+                    .map(r -> new SimpleGrantedAuthority("ROLE_" + r))
+                    .collect(Collectors.toUnmodifiableSet());
+            cached = new CachedUser(u.getUsername(), u.getPassword(), authorities);
+            cache.put(username, cached, System.currentTimeMillis() + ttlMs);
+        }
+        return new org.springframework.security.core.userdetails.User(cached.username(), cached.password(), cached.authorities());
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        cache.remove(user.getUsername());
+        return org.springframework.security.core.userdetails.User.withUserDetails(user).password(newPassword).build();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        cache.remove(event.username());
+    }
+
+    private record CachedUser(String username, String password, Set<GrantedAuthority> authorities) {
     }
 }
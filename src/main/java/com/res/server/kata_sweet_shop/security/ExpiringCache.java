@@ -0,0 +1,83 @@
+package com.res.server.kata_sweet_shop.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small bounded cache where every entry carries its own expiry time.
+ * <p>
+ * Expired entries are dropped when they are read and swept when the cache is full. If it is still
+ * nearly full after the sweep, arbitrary entries make room, which keeps the size bound without the
+ * bookkeeping of a real LRU. Each sweep frees a tenth of the cache, so under a flood of new keys the
+ * O(n) sweep runs once per maxSize/10 puts rather than on every one; reads never wait for it.
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // one sweep at a time; a lock rather than a monitor, so virtual threads waiting on it don't pin their carrier
+    private final ReentrantLock eviction = new ReentrantLock();
+
+    public ExpiringCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public V get(K key) {
+        Entry<V> e = entries.get(key);
+        if (e == null) {
+            return null;
+        }
+        if (e.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key, e);
+            return null;
+        }
+        return e.value;
+    }
+
+    public void put(K key, V value, long expiresAtMillis) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            makeRoom();
+        }
+        entries.put(key, new Entry<>(value, expiresAtMillis));
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void makeRoom() {
+        eviction.lock();
+        try {
+            if (entries.size() < maxSize) {
+                // the thread before us already swept
+                return;
+            }
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(e -> e.expiresAtMillis <= now);
+            int target = maxSize - Math.max(1, maxSize / 10);
+            Iterator<K> it = entries.keySet().iterator();
+            while (entries.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            eviction.unlock();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtMillis) {
+    }
+}
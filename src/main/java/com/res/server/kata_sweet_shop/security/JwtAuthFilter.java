@@ -1,27 +1,29 @@
 package com.res.server.kata_sweet_shop.security;
 
+import com.res.server.kata_sweet_shop.config.RequestTiming;
+import com.res.server.kata_sweet_shop.service.ShopMetrics;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final ShopMetrics metrics;
 
-    public JwtAuthFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public JwtAuthFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, ShopMetrics metrics) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.metrics = metrics;
     }
 
     @Override
@@ -36,22 +38,21 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             return;
         }
         final String token = header.substring(7);
-
-        if (!jwtUtil.validateToken(token)) {
-            filterChain.doFilter(request, response);
-            return;
+        RequestTiming timing = RequestTiming.current();
+        long start = timing == null ? 0 : System.nanoTime();
+
+        // one verification per token; repeat requests of a session are served from JwtUtil's cache
+        Optional<JwtPrincipal> principal = jwtUtil.parse(token);
+        if (principal.isEmpty()) {
+            metrics.jwtRejected();
+        } else {
+            UsernamePasswordAuthenticationToken auth =
+                    new UsernamePasswordAuthenticationToken(principal.get().username(), null, principal.get().authorities());
+            SecurityContextHolder.getContext().setAuthentication(auth);
+        }
+        if (timing != null) {
+            timing.add(RequestTiming.Phase.AUTH, System.nanoTime() - start);
         }
-
-        String username = jwtUtil.getUsernameFromToken(token);
-
-        // Explicitly type the authorities list
-        List<SimpleGrantedAuthority> authorities = jwtUtil.getRolesFromToken(token).stream()
-                .map(r -> r.startsWith("ROLE_") ? new SimpleGrantedAuthority(r)
-                        : new SimpleGrantedAuthority("ROLE_" + r))
-                .collect(Collectors.toList());
-        UsernamePasswordAuthenticationToken auth =
-                new UsernamePasswordAuthenticationToken(username, null, authorities);
-        SecurityContextHolder.getContext().setAuthentication(auth);
         filterChain.doFilter(request, response);
     }
 }
\ No newline at end of file
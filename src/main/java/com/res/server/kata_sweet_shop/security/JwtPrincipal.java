@@ -0,0 +1,13 @@
+package com.res.server.kata_sweet_shop.security;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+/**
+ * What a verified token says: who, which roles, and until when.
+ * Authorities are built once at parse time so cached principals can be reused as-is.
+ */
+public record JwtPrincipal(String username, List<String> roles, List<SimpleGrantedAuthority> authorities,
+                           long expiresAtMillis) {
+}
@@ -3,8 +3,14 @@ import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -13,12 +19,19 @@ public class JwtUtil {
 
     private final Key key;
     private final long expirationMs;
+    // the parser is immutable and thread-safe, no need to build one per call
+    private final JwtParser parser;
+    // verified principals keyed by SHA-256 of the token, each dropped when its token expires
+    private final ExpiringCache<ByteBuffer, JwtPrincipal> verified;
 
     public JwtUtil(@Value("${app.jwt.secret}") String secret,
-                   @Value("${app.jwt.expiration-ms}") long expirationMs) {
+                   @Value("${app.jwt.expiration-ms}") long expirationMs,
+                   @Value("${app.jwt.cache-size:10000}") int cacheSize) {
         byte[] keyBytes = Decoders.BASE64.decode(Base64.getEncoder().encodeToString(secret.getBytes()));
         this.key = Keys.hmacShaKeyFor(keyBytes);
         this.expirationMs = expirationMs;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.verified = new ExpiringCache<>(cacheSize);
     }
     /**
      * Generates a JWT token for the given username and roles.
@@ -49,27 +62,64 @@ public class JwtUtil {
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the token once and returns what it carries, or empty if it is invalid or expired.
+     * <p>
+     * A token seen before is answered from the cache without checking the signature or parsing
+     * the JSON again. The key is a digest of the whole token, signature included, so a forged
+     * token can never hit the entry of a genuine one.
+     */
+    public Optional<JwtPrincipal> parse(String token) {
+        ByteBuffer digest = digest(token);
+        JwtPrincipal cached = verified.get(digest);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Claims claims;
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (JwtException ex) {
-            return false;
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException ex) {
+            return Optional.empty();
         }
+        List<String> roles = rolesOf(claims);
+        List<SimpleGrantedAuthority> authorities = roles.stream()
+                .map(r -> new SimpleGrantedAuthority(r.startsWith("ROLE_") ? r : "ROLE_" + r))
+                .toList();
+        long expiresAt = claims.getExpiration() == null ? Long.MAX_VALUE : claims.getExpiration().getTime();
+        JwtPrincipal principal = new JwtPrincipal(claims.getSubject(), roles, authorities, expiresAt);
+        if (claims.getExpiration() != null) {
+            verified.put(digest, principal, expiresAt);
+        }
+        return Optional.of(principal);
+    }
+
+    public boolean validateToken(String token) {
+        return parse(token).isPresent();
     }
 
     public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
-        return claims.getSubject();
+        return parse(token).map(JwtPrincipal::username)
+                .orElseThrow(() -> new JwtException("Invalid token"));
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> getRolesFromToken(String token) {
-        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        return parse(token).map(JwtPrincipal::roles)
+                .orElseThrow(() -> new JwtException("Invalid token"));
+    }
+
+    private static List<String> rolesOf(Claims claims) {
         Object roles = claims.get("roles");
         if (roles instanceof Collection<?>) {
             return ((Collection<?>) roles).stream().map(Object::toString).collect(Collectors.toList());
         }
         return List.of();
     }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Runs read-modify-write work on a single Sweet with bounded retries and an adaptive lock mode.
+ * <p>
+ * Every sweet starts out optimistic (plain read, {@code @Version} check on flush). Conflicts are
+ * tracked per sweet as an exponentially weighted rate; once a sweet gets hot it is read with
+ * {@code SELECT ... FOR UPDATE} instead, and it goes back to optimistic when the measured lock
+ * waits show that contention has dropped.
+ * <p>
+ * Each attempt runs in its own transaction, because a transaction that hit an optimistic
+ * lock failure is already marked rollback-only and cannot be retried in place.
+ */
+@Component
+public class AdaptiveConcurrencyControl {
+
+    public enum LockMode { OPTIMISTIC, PESSIMISTIC }
+
+    // weight of the newest sample in the conflict rate
+    private static final double ALPHA = 0.2;
+    // entries that calmed down below this are dropped, so the map only holds recently hot sweets
+    private static final double FORGET_BELOW = 0.01;
+
+    private final SweetRepository sweetRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxRetries;
+    private final long baseBackoffMs;
+    private final double pessimisticThreshold;
+    private final double optimisticThreshold;
+    private final long lockWaitThresholdNanos;
+
+    private final Map<Long, Contention> contention = new ConcurrentHashMap<>();
+
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder switchesToPessimistic = new LongAdder();
+    private final LongAdder switchesToOptimistic = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+
+    public AdaptiveConcurrencyControl(SweetRepository sweetRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${app.concurrency.max-retries:3}") int maxRetries,
+                                      @Value("${app.concurrency.base-backoff-ms:5}") long baseBackoffMs,
+                                      @Value("${app.concurrency.pessimistic-threshold:0.3}") double pessimisticThreshold,
+                                      @Value("${app.concurrency.optimistic-threshold:0.05}") double optimisticThreshold,
+                                      @Value("${app.concurrency.lock-wait-threshold-ms:5}") long lockWaitThresholdMs) {
+        this.sweetRepository = sweetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxRetries = maxRetries;
+        this.baseBackoffMs = baseBackoffMs;
+        this.pessimisticThreshold = pessimisticThreshold;
+        this.optimisticThreshold = optimisticThreshold;
+        this.lockWaitThresholdNanos = TimeUnit.MILLISECONDS.toNanos(lockWaitThresholdMs);
+    }
+
+    /**
+     * Loads the sweet in the lock mode it currently needs and applies the work in a transaction.
+     * The work should flush its changes (e.g. saveAndFlush) so conflicts surface inside the attempt.
+     * Throws ResourceNotFoundException if the sweet does not exist and rethrows the
+     * optimistic lock failure once the retries are used up.
+     */
+    public <T> T withSweet(Long id, Function<Sweet, T> work) {
+        for (int attempt = 0; ; attempt++) {
+            LockMode mode = modeFor(id);
+            try {
+                T result = transactionTemplate.execute(status -> work.apply(load(id, mode)));
+                if (mode == LockMode.OPTIMISTIC) {
+                    record(id, false);
+                }
+                return result;
+            } catch (OptimisticLockingFailureException ex) {
+                conflicts.increment();
+                record(id, true);
+                if (attempt >= maxRetries) {
+                    throw ex;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    public LockMode modeFor(Long id) {
+        Contention c = contention.get(id);
+        return c == null ? LockMode.OPTIMISTIC : c.mode;
+    }
+
+    private Sweet load(Long id, LockMode mode) {
+        if (mode == LockMode.OPTIMISTIC) {
+            return sweetRepository.findById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+        }
+        long start = System.nanoTime();
+        Sweet sweet = sweetRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+        long waited = System.nanoTime() - start;
+        lockWaitNanos.add(waited);
+        // under a pessimistic lock there are no conflicts to count, so a long wait is the contention signal
+        record(id, waited >= lockWaitThresholdNanos);
+        return sweet;
+    }
+
+    private void record(Long id, boolean contended) {
+        Contention c = contended
+                ? contention.computeIfAbsent(id, k -> new Contention())
+                : contention.get(id);
+        if (c == null) {
+            return;
+        }
+        synchronized (c) {
+            c.rate = c.rate * (1 - ALPHA) + (contended ? ALPHA : 0);
+            if (c.mode == LockMode.OPTIMISTIC && c.rate >= pessimisticThreshold) {
+                c.mode = LockMode.PESSIMISTIC;
+                switchesToPessimistic.increment();
+            } else if (c.mode == LockMode.PESSIMISTIC && c.rate <= optimisticThreshold) {
+                c.mode = LockMode.OPTIMISTIC;
+                switchesToOptimistic.increment();
+            }
+            if (c.mode == LockMode.OPTIMISTIC && c.rate < FORGET_BELOW) {
+                contention.remove(id, c);
+            }
+        }
+    }
+
+    // exponential backoff with full jitter, so retrying writers don't collide again in lockstep
+    private void backoff(int attempt) {
+        long cap = baseBackoffMs << Math.min(attempt, 10);
+        if (cap <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying", e);
+        }
+    }
+
+    public long getConflicts() { return conflicts.sum(); }
+    public long getRetries() { return retries.sum(); }
+    public long getSwitchesToPessimistic() { return switchesToPessimistic.sum(); }
+    public long getSwitchesToOptimistic() { return switchesToOptimistic.sum(); }
+    public long getLockWaitNanos() { return lockWaitNanos.sum(); }
+    public int getPessimisticSweets() {
+        return (int) contention.values().stream().filter(c -> c.mode == LockMode.PESSIMISTIC).count();
+    }
+
+    private static final class Contention {
+        private double rate;
+        private volatile LockMode mode = LockMode.OPTIMISTIC;
+    }
+}
@@ -0,0 +1,50 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Checks out a whole basket against the sweets table in one transaction.
+ * <p>
+ * Every line is a conditional decrement, and all of them go to the database as one JDBC batch,
+ * so the basket costs a single round trip. The lines are sent in ascending id order, which
+ * makes concurrent baskets take their row locks in the same order and rules out deadlocks.
+ * If any line matches no row the transaction rolls back and nothing is sold.
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchedCheckout {
+
+    private static final String DECREMENT =
+            "update sweets set quantity = quantity - ?, version = version + 1 where id = ? and quantity >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SweetRepository sweetRepository;
+
+    @Transactional
+    public void apply(SortedMap<Long, Integer> lines) {
+        List<Object[]> args = new ArrayList<>(lines.size());
+        lines.forEach((id, qty) -> args.add(new Object[]{qty, id, qty}));
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT, args);
+        int i = 0;
+        for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+            if (updated[i++] == 0) {
+                // throwing rolls back the lines that did go through
+                Integer available = sweetRepository.findQuantityById(line.getKey())
+                        .orElseThrow(() -> new ResourceNotFoundException("Sweet not found: " + line.getKey()));
+                throw new InsufficientStockException(String.format("Requested %d of sweet %d but only %d available",
+                        line.getValue(), line.getKey(), available));
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.res.server.kata_sweet_shop.service;
+
+import java.nio.file.Path;
+
+/**
+ * An image ready to be served from local disk. The key (hash plus variant suffix) names
+ * immutable content, so it doubles as a strong ETag.
+ */
+public record CachedImage(String key, Path file, String contentType, long length) {
+}
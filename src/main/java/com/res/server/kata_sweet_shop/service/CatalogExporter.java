@@ -0,0 +1,86 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.OptionalInt;
+
+/**
+ * Writes the whole catalog as NDJSON (one SweetResponse per line) straight from a JDBC cursor.
+ * <p>
+ * Rows are fetched fetch-size at a time inside a read-only transaction (PostgreSQL only uses a
+ * server-side cursor with auto-commit off) and each one is written as soon as it is read, so memory
+ * stays flat however big the table is. The transaction, and its pooled connection, lasts as long
+ * as the client takes to read the response.
+ */
+@Component
+public class CatalogExporter {
+
+    private static final String SELECT_ALL =
+            "select id, name, category, price, quantity, image_url, thumbnail_url, webp_url, image_status from sweets order by id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final StockEngine stockEngine;
+    private final ObjectWriter writer;
+
+    public CatalogExporter(DataSource dataSource,
+                           PlatformTransactionManager transactionManager,
+                           StockEngine stockEngine,
+                           ObjectMapper objectMapper,
+                           @Value("${app.catalog.export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.stockEngine = stockEngine;
+        this.writer = objectMapper.writerFor(SweetResponse.class);
+    }
+
+    public void writeNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator json = writer.getFactory().createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // lines are separated by the newline below, not Jackson's default space
+            json.setRootValueSeparator(null);
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(SELECT_ALL, rs -> {
+                SweetResponse s = new SweetResponse();
+                s.setId(rs.getLong("id"));
+                s.setName(rs.getString("name"));
+                s.setCategory(rs.getString("category"));
+                s.setPrice(rs.getBigDecimal("price"));
+                s.setQuantity(rs.getObject("quantity", Integer.class));
+                s.setImageUrl(rs.getString("image_url"));
+                s.setThumbnailUrl(rs.getString("thumbnail_url"));
+                s.setWebpUrl(rs.getString("webp_url"));
+                String imageStatus = rs.getString("image_status");
+                s.setImageStatus(imageStatus == null ? null : ImageStatus.valueOf(imageStatus));
+                // the ledger engine can be ahead of the table
+                OptionalInt live = stockEngine.currentStock(s.getId());
+                if (live.isPresent()) {
+                    s.setQuantity(live.getAsInt());
+                }
+                try {
+                    writer.writeValue(json, s);
+                    json.writeRaw('\n');
+                } catch (IOException ex) {
+                    // client went away; stop reading rows
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read side of the catalog, served from an in-memory snapshot when app.catalog.cache.enabled is on.
+ */
+public interface CatalogService {
+    List<SweetResponse> listAll();
+
+    /** listAll() already serialized (and gzipped) for the current version. */
+    EncodedCatalog encodedAll();
+
+    List<SweetResponse> search(SweetSearch search);
+
+    /** Up to limit sweets with an id greater than after (null for the first page), in id order. */
+    List<SweetResponse> page(Long after, int limit);
+
+    Optional<SweetResponse> findById(Long id);
+
+    /** Increases with every committed change to the catalog; never repeats across restarts. */
+    long version();
+
+    /** Time in millis of the last change counted in version(). */
+    long lastModified();
+}
@@ -0,0 +1,299 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SearchCursor;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.exception.InvalidRequestException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves catalog reads from an immutable {@link CatalogSnapshot}.
+ * <p>
+ * Committed changes arrive as SweetChangedEvents and are queued. The next read folds the queue into
+ * a new snapshot (copy-on-write), so a burst of purchases between two reads costs one copy, and
+ * reads with nothing queued cost no DB query and no copy. A full rebuild from the table happens on
+ * first use, when a change refers to a sweet the snapshot doesn't know, and after max-age as a guard
+ * against changes made outside this instance.
+ * <p>
+ * Name searches go through a {@link TrigramIndex}, updated as SAVED and DELETED changes are folded in;
+ * stock changes don't touch it.
+ */
+@Service
+public class CatalogServiceImpl implements CatalogService {
+
+    // rounds of re-reading rows changed during a rebuild before giving up (see rebuild)
+    private static final int MAX_REREADS = 5;
+
+    private final SweetRepository sweetRepository;
+    private final SweetService sweetService;
+    private final StockEngine stockEngine;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long maxAgeMs;
+    private final TrigramIndex nameIndex;
+
+    private final Queue<SweetChangedEvent> pending = new ConcurrentLinkedQueue<>();
+    // bumped after the event is queued, so every change counted in it is already in the queue.
+    // Starts at the boot time in millis, so versions (and the ETags built on them) don't repeat across restarts
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    private volatile long lastModified = System.currentTimeMillis();
+    private volatile CatalogSnapshot snapshot;
+    private volatile long builtAt;
+    // the last rebuild gave up waiting for the queue to go quiet
+    private volatile boolean unsettled;
+    // a lock rather than a monitor: the rebuild queries the table, and a virtual thread blocked on or
+    // holding a monitor keeps its carrier thread pinned (JDK 21)
+    private final ReentrantLock refresh = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder patches = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public CatalogServiceImpl(SweetRepository sweetRepository,
+                              SweetService sweetService,
+                              StockEngine stockEngine,
+                              ObjectMapper objectMapper,
+                              @Value("${app.catalog.cache.enabled:true}") boolean enabled,
+                              @Value("${app.catalog.cache.max-age-ms:60000}") long maxAgeMs,
+                              @Value("${app.catalog.search.fuzzy-min-similarity:0.5}") double fuzzyMinSimilarity,
+                              @Value("${app.catalog.search.fuzzy-limit:20}") int fuzzyLimit) {
+        this.sweetRepository = sweetRepository;
+        this.sweetService = sweetService;
+        this.stockEngine = stockEngine;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxAgeMs = maxAgeMs;
+        this.nameIndex = new TrigramIndex(fuzzyMinSimilarity, fuzzyLimit);
+    }
+
+    @Override
+    public List<SweetResponse> listAll() {
+        if (!enabled) {
+            return sweetService.listAll();
+        }
+        return current().items();
+    }
+
+    @Override
+    public EncodedCatalog encodedAll() {
+        if (!enabled) {
+            return EncodedCatalog.encode(objectMapper, sweetService.listAll());
+        }
+        return current().encoded(objectMapper);
+    }
+
+    @Override
+    public List<SweetResponse> search(SweetSearch search) {
+        if (!enabled) {
+            return sweetService.search(search);
+        }
+        search.validate();
+        CatalogSnapshot s = current();
+        // the index may already know about a newer snapshot; the snapshot skips ids it doesn't have
+        List<Long> nameMatches = search.getName() == null ? null : nameIndex.search(search.getName());
+        return s.search(search, nameMatches);
+    }
+
+    @Override
+    public List<SweetResponse> page(Long after, int limit) {
+        if (limit <= 0 || limit > SweetSearch.MAX_LIMIT) {
+            throw new InvalidRequestException("limit must be between 1 and " + SweetSearch.MAX_LIMIT);
+        }
+        if (!enabled) {
+            SweetSearch search = SweetSearch.builder().limit(limit)
+                    .after(after == null ? null : new SearchCursor(after.toString(), after)).build();
+            return search(search);
+        }
+        return current().page(after, limit);
+    }
+
+    @Override
+    public Optional<SweetResponse> findById(Long id) {
+        if (!enabled) {
+            return sweetService.findById(id);
+        }
+        return Optional.ofNullable(current().get(id));
+    }
+
+    @Override
+    public long version() {
+        // conditional GETs may only ever ask for the version, so max-age has to be honoured here too
+        if (enabled && snapshot != null && expired()) {
+            current();
+        }
+        return version.get();
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    // fallbackExecution: SweetServiceImpl publishes after its own transaction has already committed.
+    // Ordered first, so listeners that read the catalog for the same event (StockStreamService) see it
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSweetChanged(SweetChangedEvent event) {
+        if (enabled) {
+            pending.add(event);
+        }
+        version.incrementAndGet();
+        lastModified = System.currentTimeMillis();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (enabled) {
+            current();
+        }
+    }
+
+    /** The snapshot with every committed change applied. */
+    CatalogSnapshot current() {
+        CatalogSnapshot s = snapshot;
+        if (s != null && s.version() == version.get() && !expired()) {
+            hits.increment();
+            return s;
+        }
+        misses.increment();
+        refresh.lock();
+        try {
+            s = snapshot;
+            if (s == null || expired()) {
+                s = rebuild();
+            } else if (s.version() != version.get()) {
+                s = patch(s);
+            }
+            snapshot = s;
+            return s;
+        } finally {
+            refresh.unlock();
+        }
+    }
+
+    private boolean expired() {
+        return unsettled || maxAgeMs > 0 && System.currentTimeMillis() - builtAt > maxAgeMs;
+    }
+
+    private CatalogSnapshot patch(CatalogSnapshot base) {
+        long v = version.get();
+        TreeMap<Long, SweetResponse> items = new TreeMap<>(base.byId());
+        if (!apply(items, drain())) {
+            return rebuild();
+        }
+        patches.increment();
+        return CatalogSnapshot.of(v, items.values());
+    }
+
+    private CatalogSnapshot rebuild() {
+        rebuilds.increment();
+        // everything queued so far was committed before the read below, so the read already has it
+        pending.clear();
+        TreeMap<Long, SweetResponse> items = new TreeMap<>();
+        for (SweetResponse s : sweetRepository.findAllResponses()) {
+            items.put(s.getId(), s);
+        }
+        // changes that landed while we were reading may or may not be in it, so their rows are read
+        // again rather than patched: a STOCK delta applied to a row that already has it counts twice.
+        // A change can commit before a re-read and be queued only after it, so repeat until a drain
+        // comes back empty. The version is taken before each drain: everything it counts is then consumed
+        long v = version.get();
+        boolean settled = false;
+        for (int round = 0; round < MAX_REREADS && !settled; round++) {
+            v = version.get();
+            Set<Long> touched = new HashSet<>();
+            drain().forEach(e -> touched.add(e.id()));
+            settled = touched.isEmpty();
+            if (!settled) {
+                touched.forEach(items::remove);
+                for (SweetResponse s : sweetRepository.findResponsesByIdIn(touched)) {
+                    items.put(s.getId(), s);
+                }
+            }
+        }
+        // under a purchase storm that never settles, the queue can't be trusted against these rows:
+        // leave it, and rebuild again on the next read
+        unsettled = !settled;
+        // when the stock engine keeps stock in memory, the table can be behind it
+        items.replaceAll((id, item) -> {
+            OptionalInt live = stockEngine.currentStock(id);
+            return live.isPresent() ? item.withQuantity(live.getAsInt()) : item;
+        });
+        Map<Long, String> names = new HashMap<>(items.size() * 2);
+        items.forEach((id, item) -> names.put(id, item.getName()));
+        nameIndex.rebuild(names);
+        builtAt = System.currentTimeMillis();
+        CatalogSnapshot rebuilt = CatalogSnapshot.of(v, items.values());
+        CatalogSnapshot previous = snapshot;
+        if (previous != null && !previous.items().equals(rebuilt.items())) {
+            // changed behind our back (another instance, manual SQL): new version for the ETags.
+            // The rebuilt snapshot keeps v, so the next read just moves it up to the new number
+            version.incrementAndGet();
+            lastModified = builtAt;
+        }
+        return rebuilt;
+    }
+
+    /** Applies queued changes; false if one refers to a sweet we don't have and a rebuild is needed. */
+    private boolean apply(TreeMap<Long, SweetResponse> items, List<SweetChangedEvent> events) {
+        for (SweetChangedEvent e : events) {
+            switch (e.type()) {
+                case SAVED -> {
+                    items.put(e.id(), e.sweet());
+                    nameIndex.put(e.id(), e.sweet().getName());
+                }
+                case DELETED -> {
+                    items.remove(e.id());
+                    nameIndex.remove(e.id());
+                }
+                case STOCK -> {
+                    SweetResponse current = items.get(e.id());
+                    if (current == null) {
+                        return false;
+                    }
+                    int qty = current.getQuantity() == null ? 0 : current.getQuantity();
+                    items.put(e.id(), current.withQuantity(qty + e.stockDelta()));
+                }
+            }
+        }
+        return true;
+    }
+
+    private List<SweetChangedEvent> drain() {
+        List<SweetChangedEvent> events = new ArrayList<>();
+        SweetChangedEvent e;
+        while ((e = pending.poll()) != null) {
+            events.add(e);
+        }
+        return events;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getPatches() { return patches.sum(); }
+    public long getRebuilds() { return rebuilds.sum(); }
+}
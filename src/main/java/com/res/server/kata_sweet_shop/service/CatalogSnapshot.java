@@ -0,0 +1,161 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SearchCursor;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Immutable view of the whole catalog at one version, ordered by id.
+ * The SweetResponse objects inside are shared between readers and must not be modified.
+ */
+public final class CatalogSnapshot {
+
+    private final long version;
+    private final List<SweetResponse> items;
+    private final Map<Long, SweetResponse> byId;
+    private final ReentrantLock encoding = new ReentrantLock();
+    private EncodedCatalog encoded;
+
+    private CatalogSnapshot(long version, List<SweetResponse> items) {
+        this.version = version;
+        this.items = Collections.unmodifiableList(items);
+        this.byId = new HashMap<>(items.size() * 2);
+        for (SweetResponse s : items) {
+            byId.put(s.getId(), s);
+        }
+    }
+
+    /** Builds a snapshot from items that are already sorted by id. */
+    static CatalogSnapshot of(long version, Collection<SweetResponse> sortedItems) {
+        return new CatalogSnapshot(version, new ArrayList<>(sortedItems));
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public List<SweetResponse> items() {
+        return items;
+    }
+
+    /** The items pre-serialized; computed on first use, then shared by every request for this version. */
+    public EncodedCatalog encoded(ObjectMapper objectMapper) {
+        // not a monitor: requests waiting out a large serialization would pin virtual threads' carriers
+        encoding.lock();
+        try {
+            if (encoded == null) {
+                encoded = EncodedCatalog.encode(objectMapper, items);
+            }
+            return encoded;
+        } finally {
+            encoding.unlock();
+        }
+    }
+
+    public SweetResponse get(Long id) {
+        return byId.get(id);
+    }
+
+    /** Up to limit items with an id greater than after (null for the first page). */
+    public List<SweetResponse> page(Long after, int limit) {
+        int from = 0;
+        if (after != null) {
+            // items are sorted by id: binary search for the first one past the cursor
+            int lo = 0;
+            int hi = items.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (items.get(mid).getId() <= after) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            from = lo;
+        }
+        return items.subList(from, Math.min(items.size(), from + limit));
+    }
+
+    Map<Long, SweetResponse> byId() {
+        return byId;
+    }
+
+    /**
+     * Same filters, order and paging as the SQL search in SweetSearchRepositoryImpl. nameMatches are the
+     * TrigramIndex hits for the name filter, best first (null without a name filter); they keep that
+     * order when the search is by relevance.
+     */
+    public List<SweetResponse> search(SweetSearch search, List<Long> nameMatches) {
+        List<SweetResponse> candidates = items;
+        if (nameMatches != null) {
+            candidates = new ArrayList<>(nameMatches.size());
+            for (Long id : nameMatches) {
+                SweetResponse s = byId.get(id);
+                if (s != null) {
+                    candidates.add(s);
+                }
+            }
+        }
+        Comparator<SweetResponse> order = search.byRelevance() ? null : order(search);
+        SearchCursor after = search.getAfter();
+        Comparable<?> afterKey = after == null ? null : after.key(search.sortOrDefault());
+
+        List<SweetResponse> result = new ArrayList<>();
+        for (SweetResponse s : candidates) {
+            if (matches(s, search) && (after == null || compare(s, afterKey, after.id(), search) > 0)) {
+                result.add(s);
+            }
+        }
+        // items are already in id order, so only other orders (or index hits) need a sort
+        if (order != null && (nameMatches != null || search.sortOrDefault() != SweetSearch.SortField.ID
+                || search.isDescending())) {
+            result.sort(order);
+        }
+        int from = Math.min(search.getOffset(), result.size());
+        int to = search.getLimit() == null ? result.size() : Math.min(result.size(), from + search.getLimit());
+        return from == 0 && to == result.size() ? result : new ArrayList<>(result.subList(from, to));
+    }
+
+    private static boolean matches(SweetResponse s, SweetSearch search) {
+        if (search.getCategory() != null && !search.getCategory().equalsIgnoreCase(s.getCategory())) {
+            return false;
+        }
+        BigDecimal price = s.getPrice();
+        if (search.getMinPrice() != null && (price == null || price.compareTo(search.getMinPrice()) < 0)) {
+            return false;
+        }
+        return search.getMaxPrice() == null || (price != null && price.compareTo(search.getMaxPrice()) <= 0);
+    }
+
+    private static Comparator<SweetResponse> order(SweetSearch search) {
+        SweetSearch.SortField sort = search.sortOrDefault();
+        Comparator<SweetResponse> order = (a, b) -> compareKeys(sort.keyOf(a), sort.keyOf(b));
+        order = order.thenComparing(SweetResponse::getId);
+        return search.isDescending() ? order.reversed() : order;
+    }
+
+    // position of s relative to the cursor, in the sort direction
+    private static int compare(SweetResponse s, Comparable<?> afterKey, long afterId, SweetSearch search) {
+        int c = compareKeys(search.sortOrDefault().keyOf(s), afterKey);
+        if (c == 0) {
+            c = Long.compare(s.getId(), afterId);
+        }
+        return search.isDescending() ? -c : c;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Comparable a, Comparable b) {
+        return a.compareTo(b);
+    }
+}
@@ -0,0 +1,68 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Uploads to Cloudinary (the default). The SDK streams a File from disk instead of taking a byte[].
+ */
+@Service
+@ConditionalOnProperty(name = "app.images.storage", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryImageStorage implements ImageStorage {
+
+    private final Cloudinary cloudinary;
+    private final Timer uploads;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    public CloudinaryImageStorage(Cloudinary cloudinary, ShopMetrics metrics) {
+        this.cloudinary = cloudinary;
+        this.uploads = metrics.imageUpload("cloudinary");
+    }
+
+    @Override
+    public String store(Path file, String contentType, String key) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try {
+            // a fixed public id with overwrite off: Cloudinary keeps the copy it already has
+            Map<?, ?> uploadResult = cloudinary.uploader().upload(file.toFile(), ObjectUtils.asMap(
+                    "folder", "sweets", "public_id", key, "overwrite", false));
+            return uploadResult.get("url").toString();  // public URL
+        } finally {
+            sample.stop(uploads);
+        }
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Fetching " + url + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
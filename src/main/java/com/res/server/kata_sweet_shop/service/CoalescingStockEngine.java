@@ -0,0 +1,248 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.exception.ServiceBusyException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group-commit engine (app.inventory.engine=coalescing).
+ * <p>
+ * Purchases of the same sweet that arrive within one window are collected into a batch. The batch
+ * reads the row once with SELECT ... FOR UPDATE, applies the purchases in arrival order, writes the
+ * remaining stock with a single UPDATE and then completes every caller, each with success or
+ * InsufficientStockException. The sweets row stays the source of truth; what shrinks is the number
+ * of transactions queueing on its lock.
+ * <p>
+ * Callers wait at most wait-timeout-ms for their batch to start. One that isn't picked up in time
+ * (pool saturated, engine shutting down) is withdrawn and gets ServiceBusyException (503); once a
+ * batch has taken a purchase, the caller waits for that transaction's outcome.
+ */
+@Service
+@ConditionalOnProperty(name = "app.inventory.engine", havingValue = "coalescing")
+public class CoalescingStockEngine implements StockEngine {
+
+    private final SweetRepository sweetRepository;
+    private final BatchedCheckout batchedCheckout;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMicros;
+    private final long waitTimeoutMs;
+
+    private final Map<Long, Batch> open = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "purchase-coalescer-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    // one batch holds one connection, so this also caps the connections the coalescer uses
+    private final ExecutorService workers;
+
+    public CoalescingStockEngine(SweetRepository sweetRepository,
+                                 BatchedCheckout batchedCheckout,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${app.inventory.coalescing.window-micros:1500}") long windowMicros,
+                                 @Value("${app.inventory.coalescing.workers:4}") int workers,
+                                 @Value("${app.inventory.coalescing.wait-timeout-ms:5000}") long waitTimeoutMs,
+                                 @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.sweetRepository = sweetRepository;
+        this.batchedCheckout = batchedCheckout;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMicros = windowMicros;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.workers = Executors.newFixedThreadPool(workers, WorkerThreads.factory("purchase-coalescer", virtualThreads));
+    }
+
+    @Override
+    public void purchase(Long id, int qty) {
+        PendingPurchase purchase = new PendingPurchase(qty);
+        while (true) {
+            Batch batch = open.get(id);
+            if (batch == null) {
+                Batch created = new Batch(id);
+                if (open.putIfAbsent(id, created) == null) {
+                    // joined before scheduling, so a rejected schedule fails this purchase too
+                    created.add(purchase);
+                    schedule(created);
+                    break;
+                }
+                continue;
+            }
+            if (batch.add(purchase)) {
+                break;
+            }
+            // the batch closed between lookup and add; the next one is about to open
+        }
+        await(purchase);
+    }
+
+    // restocks are rare admin calls, a plain single UPDATE is enough
+    @Override
+    public void restock(Long id, int qty) {
+        Integer updated = transactionTemplate.execute(status -> sweetRepository.incrementStock(id, qty));
+        if (updated == null || updated == 0) {
+            throw new ResourceNotFoundException("Sweet not found");
+        }
+    }
+
+    // a basket locks its rows in id order, and a batch only ever holds one row, so they can't deadlock
+    @Override
+    public void checkout(SortedMap<Long, Integer> lines) {
+        batchedCheckout.apply(lines);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        // already scheduled windows still fire after shutdown; if the workers are gone by then, their
+        // callers get ServiceBusyException (see abandon), so no caller is left hanging
+        timer.shutdown();
+        timer.awaitTermination(5, TimeUnit.SECONDS);
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void schedule(Batch batch) {
+        try {
+            timer.schedule(() -> {
+                try {
+                    workers.execute(() -> run(batch));
+                } catch (RejectedExecutionException ex) {
+                    abandon(batch);
+                }
+            }, windowMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException ex) {
+            abandon(batch);
+        }
+    }
+
+    // the batch will never run (executor shut down): take it out of open, so later purchases start a new one
+    private void abandon(Batch batch) {
+        open.remove(batch.sweetId, batch);
+        batch.close().forEach(p -> p.result.completeExceptionally(
+                new ServiceBusyException("Purchases are not being processed, please retry")));
+    }
+
+    private void await(PendingPurchase purchase) {
+        try {
+            try {
+                purchase.result.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (purchase.claim()) {
+                    throw new ServiceBusyException("Too many purchases in progress, please retry");
+                }
+                // a batch has already taken it: its transaction decides, answering 503 now could hide a sale
+                purchase.result.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while waiting for the purchase");
+        }
+    }
+
+    private void run(Batch batch) {
+        open.remove(batch.sweetId, batch);
+        List<PendingPurchase> purchases = new ArrayList<>(batch.close());
+        // callers that gave up waiting are left out
+        purchases.removeIf(p -> !p.claim());
+        if (purchases.isEmpty()) {
+            return;
+        }
+        List<PendingPurchase> sold = new ArrayList<>(purchases.size());
+        List<PendingPurchase> rejected = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                sold.clear();
+                rejected.clear();
+                Sweet sweet = sweetRepository.findByIdForUpdate(batch.sweetId)
+                        .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+                int stock = sweet.getQuantity() == null ? 0 : sweet.getQuantity();
+                for (PendingPurchase p : purchases) {
+                    if (stock >= p.qty) {
+                        stock -= p.qty;
+                        sold.add(p);
+                    } else {
+                        p.available = stock;
+                        rejected.add(p);
+                    }
+                }
+                if (!sold.isEmpty()) {
+                    // managed entity, flushed as one UPDATE on commit
+                    sweet.setQuantity(stock);
+                }
+            });
+        } catch (RuntimeException ex) {
+            purchases.forEach(p -> p.result.completeExceptionally(ex));
+            return;
+        }
+        sold.forEach(p -> p.result.complete(null));
+        rejected.forEach(p -> p.result.completeExceptionally(new InsufficientStockException(
+                String.format("Requested %d but only %d available", p.qty, p.available))));
+    }
+
+    private static final class Batch {
+        private final Long sweetId;
+        private final List<PendingPurchase> purchases = new ArrayList<>();
+        private boolean closed;
+
+        private Batch(Long sweetId) {
+            this.sweetId = sweetId;
+        }
+
+        synchronized boolean add(PendingPurchase p) {
+            if (closed) {
+                return false;
+            }
+            purchases.add(p);
+            return true;
+        }
+
+        synchronized List<PendingPurchase> close() {
+            closed = true;
+            return purchases;
+        }
+    }
+
+    private static final class PendingPurchase {
+        private final int qty;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        // set by whichever comes first: the batch taking the purchase, or the caller withdrawing it
+        private final AtomicBoolean decided = new AtomicBoolean();
+        // stock left when this purchase was turned down, for the error message
+        private int available;
+
+        private PendingPurchase(int qty) {
+            this.qty = qty;
+        }
+
+        // true for the first of the batch and the caller to ask
+        boolean claim() {
+            return decided.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The /api/sweets/all body for one catalog version, as JSON bytes and gzip-compressed JSON bytes.
+ * Built once per version, so requests in between only copy bytes to the socket.
+ */
+public record EncodedCatalog(byte[] json, byte[] gzip) {
+
+    public static EncodedCatalog encode(ObjectMapper objectMapper, List<SweetResponse> items) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(items);
+            return new EncodedCatalog(json, gzip(json));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Could not serialize catalog", ex);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        // compressed once per version and sent many times, so the slowest level pays off
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gz.write(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,242 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+import com.res.server.kata_sweet_shop.repository.ImageAssetRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local copies of stored images, for /images/{name}, so delivery does not depend on the storage backend.
+ * <p>
+ * Names are {@code <sha256>[-thumb|-webp][.ext]}. A miss looks the hash up in image_assets and
+ * downloads the image once from the configured {@link ImageStorage}; concurrent misses for the same
+ * image share that download. Images the storage already keeps on local disk are served from there
+ * and not copied. Copies live in app.images.cache.dir, and the least recently served ones are
+ * deleted once the directory grows past app.images.cache.max-size. The index is rebuilt from the
+ * directory on startup. Evicted files are deleted a little later (app.images.cache.delete-delay-ms),
+ * so responses that are still sending them are not cut short. Every download gets its own file
+ * ({@code <key>.<id>[.ext]}), so a delete still pending for an evicted copy never hits a newer one.
+ */
+@Service
+public class ImageCache {
+
+    private static final Pattern NAME = Pattern.compile("([0-9a-f]{64})(-thumb|-webp)?(\\.[a-z]{3,4})?");
+    // a cached file: the key, the id of the download that wrote it (absent in older caches), the extension
+    private static final Pattern FILE = Pattern.compile("([0-9a-f]{64}(?:-thumb|-webp)?)(?:\\.[0-9a-f]{32})?(\\.[a-z]{3,4})?");
+
+    private final ImageStorage storage;
+    private final ImageAssetRepository assets;
+    private final Path dir;
+    private final long maxBytes;
+    private final long deleteDelayMs;
+
+    // key -> entry in access order, eldest first; guarded by this
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private final Map<String, CompletableFuture<Optional<CachedImage>>> filling = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "image-cache-janitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ImageCache(ImageStorage storage,
+                      ImageAssetRepository assets,
+                      @Value("${app.images.cache.dir:data/image-cache}") String dir,
+                      @Value("${app.images.cache.max-size:1GB}") DataSize maxSize,
+                      @Value("${app.images.cache.delete-delay-ms:60000}") long deleteDelayMs) throws IOException {
+        this.storage = storage;
+        this.assets = assets;
+        this.dir = Files.createDirectories(Path.of(dir)).toAbsolutePath();
+        this.maxBytes = maxSize.toBytes();
+        this.deleteDelayMs = deleteDelayMs;
+        load();
+    }
+
+    /** The image for a /images/ name, fetched into the cache if needed; empty when there is no such image. */
+    public Optional<CachedImage> get(String name) throws IOException {
+        Matcher m = NAME.matcher(name);
+        if (!m.matches()) {
+            return Optional.empty();
+        }
+        String hash = m.group(1);
+        String variant = m.group(2) == null ? "" : m.group(2);
+        String key = hash + variant;
+        synchronized (this) {
+            Entry hit = index.get(key);
+            if (hit != null) {
+                return Optional.of(hit.image());
+            }
+        }
+        CompletableFuture<Optional<CachedImage>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<CachedImage>> running = filling.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof IOException io ? io : new IOException(ex.getCause());
+            }
+        }
+        try {
+            Optional<CachedImage> image = fill(key, hash, variant);
+            mine.complete(image);
+            return image;
+        } catch (IOException | RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            filling.remove(key, mine);
+        }
+    }
+
+    public synchronized long getCachedBytes() {
+        return bytes;
+    }
+
+    private Optional<CachedImage> fill(String key, String hash, String variant) throws IOException {
+        Optional<ImageAsset> found = assets.findById(hash);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        ImageAsset asset = found.get();
+        String url;
+        String contentType;
+        switch (variant) {
+            case "-thumb" -> {
+                url = asset.getThumbnailUrl();
+                contentType = MediaType.IMAGE_JPEG_VALUE;
+            }
+            case "-webp" -> {
+                url = asset.getWebpUrl();
+                contentType = "image/webp";
+            }
+            default -> {
+                url = asset.getUrl();
+                contentType = asset.getContentType() != null ? asset.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            }
+        }
+        if (url == null) {
+            return Optional.empty();
+        }
+
+        Optional<Path> local = storage.localFile(url);
+        if (local.isPresent()) {
+            CachedImage image = new CachedImage(key, local.get(), contentType, Files.size(local.get()));
+            synchronized (this) {
+                // not ours: never counted, never deleted
+                index.put(key, new Entry(image, false));
+            }
+            return Optional.of(image);
+        }
+
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path target = dir.resolve(key + "." + id + ImageStorage.extension(contentType));
+        Path partial = dir.resolve(key + "." + id + ".part");
+        try (InputStream in = storage.open(url)) {
+            Files.copy(in, partial);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        CachedImage image = new CachedImage(key, target, contentType, Files.size(target));
+        add(image);
+        return Optional.of(image);
+    }
+
+    private synchronized void add(CachedImage image) {
+        Entry previous = index.put(image.key(), new Entry(image, true));
+        if (previous != null && previous.owned()) {
+            bytes -= previous.image().length();
+            if (!previous.image().file().equals(image.file())) {
+                deleteLater(previous.image().file());
+            }
+        }
+        bytes += image.length();
+        for (Iterator<Entry> it = index.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+            Entry eldest = it.next();
+            if (!eldest.owned()) {
+                continue;
+            }
+            it.remove();
+            bytes -= eldest.image().length();
+            deleteLater(eldest.image().file());
+        }
+    }
+
+    private void deleteLater(Path file) {
+        janitor.schedule(() -> deleteQuietly(file), deleteDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // oldest files first, so the LRU order survives a restart roughly intact
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".part")) {
+                // left over from a download cut short by a shutdown
+                deleteQuietly(file);
+            } else if (FILE.matcher(name).matches()) {
+                modified.put(file, Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(modified.keySet());
+        oldestFirst.sort(Comparator.comparing(modified::get));
+        for (Path file : oldestFirst) {
+            String name = file.getFileName().toString();
+            Matcher m = FILE.matcher(name);
+            m.matches();
+            String key = m.group(1);
+            String contentType = MediaTypeFactory.getMediaType(name)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+            add(new CachedImage(key, file, contentType, Files.size(file)));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // retried on the next startup scan at the latest
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        janitor.shutdown();
+    }
+
+    private record Entry(CachedImage image, boolean owned) {
+    }
+}
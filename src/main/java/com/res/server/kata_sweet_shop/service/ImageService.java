@@ -1,24 +1,237 @@
 package com.res.server.kata_sweet_shop.service;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
+import com.res.server.kata_sweet_shop.dto.SweetRequest;
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.ServiceBusyException;
+import com.res.server.kata_sweet_shop.repository.ImageAssetRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Creates sweets whose image is uploaded in the background.
+ * <p>
+ * The multipart part is copied to a file of our own, because the container deletes its copy when
+ * the request ends, and it is hashed (SHA-256) on the way. Bytes we already hold (an ImageAsset with
+ * that hash) are not stored again: the sweet is saved READY with the existing URLs. Otherwise the
+ * sweet is saved right away with ImageStatus.PENDING, and a small dedicated pool stores the file and
+ * its thumbnail/WebP variants in the configured {@link ImageStorage}, then patches the URLs into the
+ * row (READY), or marks the image FAILED. Two uploads of the same new bytes share one store. With
+ * app.images.delivery=local the sweet gets /images/ URLs on this server (see ImageCache) instead of
+ * the storage backend's; image_assets always keeps the backend's. The
+ * number of uploads queued or running is capped; past the cap, new ones are refused before anything
+ * is saved. If the pool refuses the upload anyway (shutdown), the saved sweet is returned as FAILED.
+ */
+@Slf4j
 @Service
 public class ImageService {
 
-    private final Cloudinary cloudinary;
+    private final ImageStorage storage;
+    private final ImageVariants variants;
+    private final ImageAssetRepository assets;
+    private final SweetService sweetService;
+    // prefix of /images/ URLs, or null to hand out the storage backend's URLs
+    private final String deliveryBase;
+    private final ExecutorService uploads;
+    // one permit per upload that is queued or running
+    private final Semaphore slots;
+    // hash -> store in progress, so concurrent uploads of the same bytes wait for one another
+    private final Map<String, CompletableFuture<StoredImage>> storing = new ConcurrentHashMap<>();
 
-    public ImageService(Cloudinary cloudinary) {
-        this.cloudinary = cloudinary;
+    public ImageService(ImageStorage storage,
+                        ImageVariants variants,
+                        ImageAssetRepository assets,
+                        SweetService sweetService,
+                        @Value("${app.images.upload.workers:4}") int workers,
+                        @Value("${app.images.upload.queue:100}") int queue,
+                        @Value("${app.images.delivery:origin}") String delivery,
+                        @Value("${app.images.local.base-url:}") String baseUrl,
+                        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.storage = storage;
+        this.variants = variants;
+        this.assets = assets;
+        this.sweetService = sweetService;
+        this.deliveryBase = switch (delivery) {
+            case "origin" -> null;
+            case "local" -> baseUrl + "/images/";
+            default -> throw new IllegalArgumentException("app.images.delivery must be origin or local: " + delivery);
+        };
+        this.slots = new Semaphore(workers + queue);
+        // the pool size caps concurrent uploads either way; virtual threads just don't tie up an OS thread per upload
+        this.uploads = Executors.newFixedThreadPool(workers, WorkerThreads.factory("image-upload", virtualThreads));
     }
-    public String uploadImage(MultipartFile file) throws IOException {
-        Map<String, Object> uploadResult = cloudinary.uploader().upload(file.getBytes(),
-                ObjectUtils.asMap("folder", "sweets"));
-        return uploadResult.get("url").toString();  // public URL
+
+    public Sweet createWithImage(SweetRequest request, MultipartFile image) throws IOException {
+        if (!slots.tryAcquire()) {
+            throw new ServiceBusyException("Too many image uploads in progress, please retry");
+        }
+        Path file = null;
+        Sweet sweet = null;
+        boolean submitted = false;
+        try {
+            file = Files.createTempFile("sweet-image-", ".upload");
+            String hash = copyAndHash(image, file);
+            Optional<ImageAsset> known = assets.findById(hash);
+            if (known.isPresent()) {
+                return sweetService.create(request, delivered(StoredImage.of(known.get())), ImageStatus.READY);
+            }
+            // read now: the container may clean up the part before the worker gets to it
+            String contentType = image.getContentType();
+            sweet = sweetService.create(request, null, ImageStatus.PENDING);
+            Long id = sweet.getId();
+            Path toUpload = file;
+            try {
+                uploads.execute(() -> upload(id, hash, toUpload, contentType));
+            } catch (RejectedExecutionException ex) {
+                // shutting down: the sweet is saved, only its image is lost, so say that rather than fail
+                log.warn("Image upload for sweet {} refused, pool is shut down", id);
+                sweetService.setImage(id, null, ImageStatus.FAILED);
+                sweet.setImageStatus(ImageStatus.FAILED);
+                return sweet;
+            }
+            submitted = true;
+            return sweet;
+        } catch (IOException | RuntimeException ex) {
+            if (sweet != null) {
+                sweetService.setImage(sweet.getId(), null, ImageStatus.FAILED);
+            }
+            throw ex;
+        } finally {
+            if (!submitted) {
+                slots.release();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void upload(Long id, String hash, Path file, String contentType) {
+        try {
+            sweetService.setImage(id, delivered(store(hash, file, contentType)), ImageStatus.READY);
+        } catch (Exception ex) {
+            log.warn("Image upload for sweet {} failed", id, ex);
+            try {
+                sweetService.setImage(id, null, ImageStatus.FAILED);
+            } catch (RuntimeException inner) {
+                log.error("Could not mark image of sweet {} as failed", id, inner);
+            }
+        } finally {
+            slots.release();
+            deleteQuietly(file);
+        }
+    }
+
+    StoredImage store(String hash, Path file, String contentType) throws IOException {
+        CompletableFuture<StoredImage> mine = new CompletableFuture<>();
+        CompletableFuture<StoredImage> running = storing.putIfAbsent(hash, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException ex) {
+                // the other upload failed; this one reports the same failure
+                throw new IOException(ex.getCause());
+            }
+        }
+        try {
+            // it may have been stored after createWithImage looked
+            Optional<ImageAsset> known = assets.findById(hash);
+            StoredImage stored = known.isPresent() ? StoredImage.of(known.get()) : storeNew(hash, file, contentType);
+            mine.complete(stored);
+            return stored;
+        } catch (IOException | RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            storing.remove(hash, mine);
+        }
+    }
+
+    private StoredImage storeNew(String hash, Path file, String contentType) throws IOException {
+        String url = storage.store(file, contentType, hash);
+        String thumbnailUrl = storeVariant(variants.thumbnail(file), "image/jpeg", hash + "-thumb");
+        String webpUrl = storeVariant(variants.webp(file), "image/webp", hash + "-webp");
+        assets.save(ImageAsset.builder()
+                .hash(hash)
+                .contentType(contentType)
+                .size(Files.size(file))
+                .url(url)
+                .thumbnailUrl(thumbnailUrl)
+                .webpUrl(webpUrl)
+                .build());
+        return new StoredImage(hash, url, thumbnailUrl, webpUrl);
+    }
+
+    private StoredImage delivered(StoredImage image) {
+        if (deliveryBase == null) {
+            return image;
+        }
+        String hash = image.hash();
+        return new StoredImage(hash, deliveryBase + hash,
+                image.thumbnailUrl() == null ? null : deliveryBase + hash + "-thumb",
+                image.webpUrl() == null ? null : deliveryBase + hash + "-webp");
+    }
+
+    private String storeVariant(Optional<Path> variant, String contentType, String key) throws IOException {
+        if (variant.isEmpty()) {
+            return null;
+        }
+        try {
+            return storage.store(variant.get(), contentType, key);
+        } finally {
+            deleteQuietly(variant.get());
+        }
+    }
+
+    // one streaming pass: no byte[] of the whole image, and the digest comes for free
+    private static String copyAndHash(MultipartFile image, Path target) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (InputStream in = new DigestInputStream(image.getInputStream(), sha256)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // temp dir, cleaned up by the OS eventually
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        uploads.shutdown();
+        uploads.awaitTermination(30, TimeUnit.SECONDS);
     }
-}
\ No newline at end of file
+}
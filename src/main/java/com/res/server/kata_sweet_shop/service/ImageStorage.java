@@ -0,0 +1,42 @@
+package com.res.server.kata_sweet_shop.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Where sweet images end up, selected by app.images.storage (cloudinary or local).
+ */
+public interface ImageStorage {
+
+    Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", ".jpg", "image/png", ".png", "image/gif", ".gif", "image/webp", ".webp");
+
+    /**
+     * Stores the image in the given file, reading it as a stream, and returns its public URL.
+     * The key is derived from the content hash, so storing the same key twice may keep the first copy.
+     * Called on the upload executor; the caller deletes the file afterwards.
+     */
+    String store(Path file, String contentType, String key) throws IOException;
+
+    /**
+     * Reads back an image by the URL {@link #store} returned. Used by ImageCache to fill itself.
+     */
+    InputStream open(String url) throws IOException;
+
+    /**
+     * The file behind the URL when this storage keeps images on local disk, so it can be served
+     * as is instead of being copied into the cache.
+     */
+    default Optional<Path> localFile(String url) {
+        return Optional.empty();
+    }
+
+    /** File extension for a content type, empty when unknown. */
+    static String extension(String contentType) {
+        return contentType == null ? "" : EXTENSIONS.getOrDefault(contentType.toLowerCase(Locale.ROOT), "");
+    }
+}
@@ -0,0 +1,124 @@
+package com.res.server.kata_sweet_shop.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Makes the smaller copies of an uploaded image, once, on the upload executor.
+ * <p>
+ * The thumbnail is a JPEG that fits in a size x size box. The source is decoded with subsampling,
+ * so a large photo is never fully decoded just to be shrunk. The WebP copy is only made when an
+ * ImageIO WebP writer is on the classpath; the JDK does not ship one. Files that are not images,
+ * or are bigger than max-pixels, get no variants.
+ */
+@Component
+public class ImageVariants {
+
+    private final int size;
+    private final long maxPixels;
+
+    public ImageVariants(@Value("${app.images.thumbnail.size:320}") int size,
+                         @Value("${app.images.variants.max-pixels:40000000}") long maxPixels) {
+        this.size = size;
+        this.maxPixels = maxPixels;
+    }
+
+    /** A JPEG thumbnail in a temp file the caller deletes, or empty when the file is not a usable image. */
+    public Optional<Path> thumbnail(Path source) throws IOException {
+        BufferedImage image = read(source, true);
+        if (image == null) {
+            return Optional.empty();
+        }
+        double scale = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage thumb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumb.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha; transparent areas become white
+            g.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return write(thumb, "jpeg", ".jpg");
+    }
+
+    /** A full-size WebP copy, or empty when no WebP writer is installed or the file is not a usable image. */
+    public Optional<Path> webp(Path source) throws IOException {
+        if (!ImageIO.getImageWritersByFormatName("webp").hasNext()) {
+            return Optional.empty();
+        }
+        BufferedImage image = read(source, false);
+        return image == null ? Optional.empty() : write(image, "webp", ".webp");
+    }
+
+    private BufferedImage read(Path source, boolean subsample) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsample) {
+                    // keep at least twice the target size for a clean downscale
+                    int step = Math.max(1, Math.max(width, height) / (size * 2));
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } catch (IOException | RuntimeException ex) {
+                // truncated or unsupported data: treat it as "not an image"
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static Optional<Path> write(BufferedImage image, String format, String suffix) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return Optional.empty();
+        }
+        ImageWriter writer = writers.next();
+        Path out = Files.createTempFile("sweet-variant-", suffix);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out.toFile())) {
+            writer.setOutput(stream);
+            writer.write(image);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(out);
+            throw ex;
+        } finally {
+            writer.dispose();
+        }
+        return Optional.of(out);
+    }
+}
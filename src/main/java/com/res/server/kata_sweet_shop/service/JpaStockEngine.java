@@ -0,0 +1,53 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.SortedMap;
+
+/**
+ * Default engine: the sweets row is the source of truth and every sale is one conditional UPDATE.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.inventory.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaStockEngine implements StockEngine {
+
+    private final SweetRepository sweetRepository;
+    private final BatchedCheckout batchedCheckout;
+
+    /**
+     * Sells qty units with one conditional UPDATE instead of read-check-save.
+     * The extra SELECT only runs when the UPDATE matched no row, to report why.
+     */
+    @Override
+    @Transactional
+    public void purchase(Long id, int qty) {
+        if (sweetRepository.decrementStock(id, qty) == 1) {
+            return;
+        }
+        Integer available = sweetRepository.findQuantityById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+        throw new InsufficientStockException(
+                String.format("Requested %d but only %d available", qty, available)
+        );
+    }
+
+    @Override
+    @Transactional
+    public void restock(Long id, int qty) {
+        if (sweetRepository.incrementStock(id, qty) == 0) {
+            throw new ResourceNotFoundException("Sweet not found");
+        }
+    }
+
+    @Override
+    public void checkout(SortedMap<Long, Integer> lines) {
+        batchedCheckout.apply(lines);
+    }
+}
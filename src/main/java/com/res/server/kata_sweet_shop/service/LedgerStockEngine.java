@@ -0,0 +1,349 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.LedgerCheckpoint;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.repository.LedgerCheckpointRepository;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory stock ledger (app.inventory.engine=ledger).
+ * <p>
+ * Stock per sweet lives in an atomic counter, so a purchase is a CAS plus a 16-byte journal append
+ * instead of a row lock in Postgres. Net deltas are written to the sweets table every
+ * flush interval in one batched UPDATE, together with a checkpoint of the journal segment they came from.
+ * <p>
+ * On boot, journal segments newer than the checkpoint are applied to the table, then the ledger is
+ * loaded from it. The ledger assumes it is the only writer of sweets.quantity, so run a single
+ * instance in this mode. Reads straight from the table lag by at most one flush interval.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.inventory.engine", havingValue = "ledger")
+public class LedgerStockEngine implements StockEngine {
+
+    private static final String APPLY_DELTA = "update sweets set quantity = quantity + ? where id = ?";
+
+    private final SweetRepository sweetRepository;
+    private final LedgerCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StockJournal journal;
+    private final long flushIntervalMs;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // set when a flush failed and its deltas went back into the ledger
+    private volatile boolean retryNeeded;
+    // appends share the read side; rotating the journal and draining the deltas takes the write side
+    private final ReentrantReadWriteLock rotation = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stock-ledger-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Autowired
+    public LedgerStockEngine(SweetRepository sweetRepository,
+                             LedgerCheckpointRepository checkpointRepository,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${app.inventory.ledger.journal-dir:data/ledger}") String journalDir,
+                             @Value("${app.inventory.ledger.fsync:false}") boolean fsync,
+                             @Value("${app.inventory.ledger.flush-interval-ms:200}") long flushIntervalMs) throws IOException {
+        this(sweetRepository, checkpointRepository, jdbcTemplate, transactionManager,
+                new StockJournal(Path.of(journalDir), fsync), flushIntervalMs);
+    }
+
+    LedgerStockEngine(SweetRepository sweetRepository,
+                      LedgerCheckpointRepository checkpointRepository,
+                      JdbcTemplate jdbcTemplate,
+                      PlatformTransactionManager transactionManager,
+                      StockJournal journal,
+                      long flushIntervalMs) {
+        this.sweetRepository = sweetRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.journal = journal;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    void recover() throws IOException {
+        long checkpoint = checkpointRepository.findById(LedgerCheckpoint.SINGLETON_ID)
+                .map(LedgerCheckpoint::getLastFlushedSegment)
+                .orElse(0L);
+        long last = checkpoint;
+        Map<Long, Integer> unflushed = new HashMap<>();
+        for (long segment : journal.segments()) {
+            if (segment > checkpoint) {
+                journal.read(segment).forEach((id, delta) -> unflushed.merge(id, delta, Integer::sum));
+            }
+            last = Math.max(last, segment);
+        }
+        if (last > checkpoint) {
+            writeDeltas(unflushed, last);
+        }
+        journal.deleteUpTo(last);
+
+        jdbcTemplate.query("select id, quantity from sweets",
+                rs -> { entries.put(rs.getLong(1), new Entry(rs.getInt(2))); });
+        journal.open(last + 1);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+        journal.close();
+    }
+
+    @Override
+    public void purchase(Long id, int qty) {
+        Entry e = entry(id);
+        rotation.readLock().lock();
+        try {
+            int current;
+            do {
+                current = e.stock.get();
+                if (current < qty) {
+                    throw new InsufficientStockException(
+                            String.format("Requested %d but only %d available", qty, current));
+                }
+            } while (!e.stock.compareAndSet(current, current - qty));
+            record(id, e, -qty);
+        } finally {
+            rotation.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void restock(Long id, int qty) {
+        Entry e = entry(id);
+        rotation.readLock().lock();
+        try {
+            e.stock.addAndGet(qty);
+            record(id, e, qty);
+        } finally {
+            rotation.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes every line out of stock or none. Lines already taken are put back when a later one
+     * doesn't fit, so a concurrent buyer may briefly see the lower stock; nothing is ever oversold.
+     * If journaling fails part-way, lines already journaled are cancelled with compensating records
+     * and every line goes back into stock (see {@link #undoCheckout}).
+     */
+    @Override
+    public void checkout(SortedMap<Long, Integer> lines) {
+        Map<Long, Entry> basket = new LinkedHashMap<>();
+        lines.keySet().forEach(id -> basket.put(id, entry(id)));
+        rotation.readLock().lock();
+        try {
+            List<Long> taken = new ArrayList<>(lines.size());
+            for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+                Entry e = basket.get(line.getKey());
+                int qty = line.getValue();
+                int current;
+                do {
+                    current = e.stock.get();
+                    if (current < qty) {
+                        taken.forEach(id -> basket.get(id).stock.addAndGet(lines.get(id)));
+                        throw new InsufficientStockException(String.format(
+                                "Requested %d of sweet %d but only %d available", qty, line.getKey(), current));
+                    }
+                } while (!e.stock.compareAndSet(current, current - qty));
+                taken.add(line.getKey());
+            }
+            List<Long> journaled = new ArrayList<>(lines.size());
+            for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+                try {
+                    journal.append(line.getKey(), -line.getValue());
+                } catch (IOException ex) {
+                    undoCheckout(lines, basket, journaled);
+                    throw new UncheckedIOException("Could not journal stock change", ex);
+                }
+                journaled.add(line.getKey());
+            }
+            lines.forEach((id, qty) -> basket.get(id).pending.addAndGet(-qty));
+        } finally {
+            rotation.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean holdsStock() {
+        return true;
+    }
+
+    @Override
+    public void setStock(Long id, int qty) {
+        Entry e = entry(id);
+        rotation.readLock().lock();
+        try {
+            int previous = e.stock.getAndSet(qty);
+            record(id, e, qty - previous);
+        } finally {
+            rotation.readLock().unlock();
+        }
+    }
+
+    @Override
+    public OptionalInt currentStock(Long id) {
+        Entry e = entries.get(id);
+        return e == null ? OptionalInt.empty() : OptionalInt.of(e.stock.get());
+    }
+
+    @Override
+    public void onCreated(Sweet sweet) {
+        int qty = sweet.getQuantity() == null ? 0 : sweet.getQuantity();
+        entries.putIfAbsent(sweet.getId(), new Entry(qty));
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Closes the current journal segment and writes the deltas collected in it to the sweets table.
+     * If the write fails the deltas go back into the ledger and the segment stays on disk,
+     * so the next successful flush (or the next boot) picks them up.
+     */
+    synchronized void flush() throws IOException {
+        Map<Long, Integer> deltas = new HashMap<>();
+        long closed;
+        rotation.writeLock().lock();
+        try {
+            if (journal.isEmpty() && !retryNeeded) {
+                return;
+            }
+            closed = journal.rotate();
+            entries.forEach((id, e) -> {
+                int delta = e.pending.getAndSet(0);
+                if (delta != 0) {
+                    deltas.put(id, delta);
+                }
+            });
+        } finally {
+            rotation.writeLock().unlock();
+        }
+        try {
+            writeDeltas(deltas, closed);
+        } catch (RuntimeException ex) {
+            deltas.forEach((id, delta) -> {
+                Entry e = entries.get(id);
+                if (e != null) {
+                    e.pending.addAndGet(delta);
+                }
+            });
+            retryNeeded = true;
+            throw ex;
+        }
+        retryNeeded = false;
+        journal.deleteUpTo(closed);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            log.warn("Stock ledger flush failed, will retry: {}", ex.getMessage());
+        }
+    }
+
+    private void writeDeltas(Map<Long, Integer> deltas, long segment) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> args.add(new Object[]{delta, id}));
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!args.isEmpty()) {
+                jdbcTemplate.batchUpdate(APPLY_DELTA, args);
+            }
+            checkpointRepository.save(new LedgerCheckpoint(LedgerCheckpoint.SINGLETON_ID, segment));
+        });
+    }
+
+    /**
+     * Puts a basket whose journaling failed back into stock. Lines not journaled only need their
+     * stock back; journaled ones first get a compensating record. If that fails too, the line stays
+     * sold, as the journal says, so memory and a restart still agree; the caller gets the error either way.
+     */
+    private void undoCheckout(SortedMap<Long, Integer> lines, Map<Long, Entry> basket, List<Long> journaled) {
+        lines.forEach((id, qty) -> {
+            Entry e = basket.get(id);
+            if (journaled.contains(id)) {
+                try {
+                    journal.append(id, qty);
+                } catch (IOException ex) {
+                    log.error("Could not cancel journaled checkout line for sweet {}; it stays sold", id, ex);
+                    e.pending.addAndGet(-qty);
+                    return;
+                }
+            }
+            e.stock.addAndGet(qty);
+        });
+    }
+
+    // must be called under the read lock, so the delta lands in the same segment it was journaled in
+    private void record(Long id, Entry e, int delta) {
+        try {
+            journal.append(id, delta);
+        } catch (IOException ex) {
+            e.stock.addAndGet(-delta);
+            throw new UncheckedIOException("Could not journal stock change", ex);
+        }
+        e.pending.addAndGet(delta);
+    }
+
+    private Entry entry(Long id) {
+        Entry e = entries.get(id);
+        if (e != null) {
+            return e;
+        }
+        // sweet that wasn't there at boot and didn't go through create (e.g. inserted by another tool)
+        Integer qty = sweetRepository.findQuantityById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
+        return entries.computeIfAbsent(id, k -> new Entry(qty));
+    }
+
+    private static final class Entry {
+        private final AtomicInteger stock;
+        // net change since the last flush
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Entry(int stock) {
+            this.stock = new AtomicInteger(stock);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.res.server.kata_sweet_shop.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Keeps images in a local directory (app.images.storage=local), so the shop runs without a
+ * Cloudinary account. The files are served by ImageController under /images/.
+ */
+@Service
+@ConditionalOnProperty(name = "app.images.storage", havingValue = "local")
+public class LocalImageStorage implements ImageStorage {
+
+    private final Path dir;
+    private final String baseUrl;
+
+    public LocalImageStorage(@Value("${app.images.local.dir:data/images}") String dir,
+                             @Value("${app.images.local.base-url:}") String baseUrl) throws IOException {
+        this.dir = Files.createDirectories(Path.of(dir)).toAbsolutePath().normalize();
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public String store(Path file, String contentType, String key) throws IOException {
+        String name = key + ImageStorage.extension(contentType);
+        Path target = dir.resolve(name);
+        if (Files.exists(target)) {
+            // content-addressed: same key, same bytes
+            return baseUrl + "/images/" + name;
+        }
+        Path partial = dir.resolve(name + "." + UUID.randomUUID() + ".part");
+        Files.copy(file, partial, StandardCopyOption.REPLACE_EXISTING);
+        // readers never see a half-written file
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return baseUrl + "/images/" + name;
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        Path file = localFile(url).orElseThrow(() -> new NoSuchFileException(url));
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public Optional<Path> localFile(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        Path file = dir.resolve(name).normalize();
+        // the name comes from a URL; never leave the image directory
+        if (name.isEmpty() || !file.getParent().equals(dir.normalize()) || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+}
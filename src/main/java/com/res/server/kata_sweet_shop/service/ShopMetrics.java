@@ -0,0 +1,80 @@
+package com.res.server.kata_sweet_shop.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Business counters that Spring's own instrumentation doesn't see: sales per sweet, sold-out
+ * refusals, rejected JWTs and image upload time.
+ * <p>
+ * Sales are tagged with the sweet id, but only for the first max-sweet-tags sweets that sell;
+ * every later one is counted under sweet="other", so a large catalog can't blow up the number of
+ * time series.
+ */
+@Component
+public class ShopMetrics {
+
+    static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+    private final int maxSweetTags;
+    private final Map<Long, Counter> salesBySweet = new ConcurrentHashMap<>();
+    private final Counter otherSales;
+    private final Counter insufficientStock;
+    private final Counter jwtRejected;
+
+    public ShopMetrics(MeterRegistry registry,
+                       @Value("${app.metrics.max-sweet-tags:100}") int maxSweetTags) {
+        this.registry = registry;
+        this.maxSweetTags = maxSweetTags;
+        this.otherSales = sales(OTHER);
+        this.insufficientStock = Counter.builder("sweetshop.purchase.insufficient.stock")
+                .description("Purchases refused because the sweet was sold out or short")
+                .register(registry);
+        this.jwtRejected = Counter.builder("sweetshop.jwt.rejected")
+                .description("Bearer tokens that failed validation (bad signature, expired, malformed)")
+                .register(registry);
+    }
+
+    /** A successful purchase of quantity units of the given sweet. */
+    public void purchased(Long sweetId, int quantity) {
+        Counter counter = salesBySweet.get(sweetId);
+        if (counter == null) {
+            // the size check races a little; the cap may be overshot by a few concurrent first sales
+            counter = salesBySweet.size() < maxSweetTags
+                    ? salesBySweet.computeIfAbsent(sweetId, id -> sales(String.valueOf(id)))
+                    : otherSales;
+        }
+        counter.increment(quantity);
+    }
+
+    public void insufficientStock() {
+        insufficientStock.increment();
+    }
+
+    public void jwtRejected() {
+        jwtRejected.increment();
+    }
+
+    /** Times a single upload to the image storage backend; backend is e.g. "cloudinary". */
+    public Timer imageUpload(String backend) {
+        return Timer.builder("sweetshop.image.upload")
+                .description("Time to store one image (original or variant) in the storage backend")
+                .tag("backend", backend)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    private Counter sales(String sweet) {
+        return Counter.builder("sweetshop.purchase.units")
+                .description("Units sold, per sweet")
+                .tag("sweet", sweet)
+                .register(registry);
+    }
+}
@@ -0,0 +1,50 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+
+import java.util.OptionalInt;
+import java.util.SortedMap;
+
+/**
+ * Decides purchases and restocks for SweetService.
+ * The implementation is picked with app.inventory.engine (jpa or ledger).
+ */
+public interface StockEngine {
+
+    /**
+     * Takes qty units out of stock.
+     * Throws ResourceNotFoundException or InsufficientStockException when the sale can't happen.
+     */
+    void purchase(Long id, int qty);
+
+    void restock(Long id, int qty);
+
+    /**
+     * Buys every line of a basket (sweet id to quantity, ascending ids) or none of them.
+     */
+    void checkout(SortedMap<Long, Integer> lines);
+
+    /**
+     * True when this engine, rather than the sweets row, is the source of truth for stock levels.
+     * In that case SweetService routes absolute quantity changes through {@link #setStock}.
+     */
+    default boolean holdsStock() {
+        return false;
+    }
+
+    default void setStock(Long id, int qty) {
+        throw new UnsupportedOperationException("Stock is stored on the sweets row");
+    }
+
+    /** Live stock level when this engine holds it; empty when the sweets row is authoritative. */
+    default OptionalInt currentStock(Long id) {
+        return OptionalInt.empty();
+    }
+
+    // lifecycle hooks, called after the sweet has been saved or deleted
+    default void onCreated(Sweet sweet) {
+    }
+
+    default void onDeleted(Long id) {
+    }
+}
@@ -0,0 +1,130 @@
+package com.res.server.kata_sweet_shop.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of stock deltas, split into numbered segment files (ledger-N.journal).
+ * <p>
+ * Each record is 16 bytes: sweet id, delta and a check word. A torn record at the end of a
+ * segment (crash mid-write) fails the check and ends the replay of that segment.
+ * Appends are safe from many threads; {@link #rotate()} must not run concurrently with them.
+ */
+final class StockJournal implements Closeable {
+
+    private static final int RECORD_SIZE = 16;
+    private static final int CHECK_SEED = 0x5eed_cafe;
+    private static final String PREFIX = "ledger-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final boolean fsync;
+    private final AtomicLong appended = new AtomicLong();
+    private FileChannel channel;
+    private long segment;
+
+    StockJournal(Path dir, boolean fsync) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.fsync = fsync;
+    }
+
+    /** Segment numbers present on disk, oldest first. */
+    List<Long> segments() throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // not one of ours
+                }
+            }
+        }
+        found.sort(null);
+        return found;
+    }
+
+    /** Net delta per sweet id recorded in a segment. */
+    Map<Long, Integer> read(long segment) throws IOException {
+        Map<Long, Integer> deltas = new HashMap<>();
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path(segment)));
+        while (buf.remaining() >= RECORD_SIZE) {
+            long id = buf.getLong();
+            int delta = buf.getInt();
+            if (buf.getInt() != check(id, delta)) {
+                break;
+            }
+            deltas.merge(id, delta, Integer::sum);
+        }
+        return deltas;
+    }
+
+    void open(long segment) throws IOException {
+        this.channel = FileChannel.open(path(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.segment = segment;
+        this.appended.set(0);
+    }
+
+    void append(long id, int delta) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        buf.putLong(id).putInt(delta).putInt(check(id, delta)).flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        appended.incrementAndGet();
+    }
+
+    boolean isEmpty() {
+        return appended.get() == 0;
+    }
+
+    /** Closes the current segment and starts the next one; returns the number of the closed segment. */
+    long rotate() throws IOException {
+        long closed = segment;
+        channel.force(false);
+        channel.close();
+        open(closed + 1);
+        return closed;
+    }
+
+    /** Deletes every segment up to and including the given number. */
+    void deleteUpTo(long segment) throws IOException {
+        for (long s : segments()) {
+            if (s <= segment) {
+                Files.deleteIfExists(path(s));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private Path path(long segment) {
+        return dir.resolve(PREFIX + segment + SUFFIX);
+    }
+
+    private static int check(long id, int delta) {
+        return (Long.hashCode(id) * 31 + delta) ^ CHECK_SEED;
+    }
+}
@@ -0,0 +1,217 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SweetDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes stock and price changes to Server-Sent Events subscribers (/api/sweets/stream).
+ * <p>
+ * Committed changes only mark the sweet dirty. Every tick the dirty sweets are read once from the
+ * catalog, and the resulting batch is serialized once and offered to every subscriber, so a burst of
+ * purchases on one sweet becomes one delta per tick. Idle subscribers are plain async requests and
+ * hold no thread. Each subscriber has at most one send in flight, on a virtual thread, so a slow
+ * client never blocks the others. Deltas that arrive while its send is in flight replace older
+ * unsent values for the same sweet: a slow client skips intermediate values instead of queueing them.
+ */
+@Slf4j
+@Service
+public class StockStreamService {
+
+    private final CatalogService catalogService;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    private final int maxSubscribers;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stock-stream-ticker");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("stock-stream-send-", 0).factory());
+
+    public StockStreamService(CatalogService catalogService,
+                              ObjectMapper objectMapper,
+                              @Value("${app.catalog.stream.tick-ms:250}") long tickMs,
+                              @Value("${app.catalog.stream.heartbeat-ms:25000}") long heartbeatMs,
+                              @Value("${app.catalog.stream.timeout-ms:1800000}") long timeoutMs,
+                              @Value("${app.catalog.stream.max-subscribers:20000}") int maxSubscribers) {
+        this.catalogService = catalogService;
+        this.objectMapper = objectMapper;
+        this.timeoutMs = timeoutMs;
+        this.maxSubscribers = maxSubscribers;
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        // keeps proxies from closing idle streams and finds clients that went away
+        ticker.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** A new subscriber, or empty when the subscriber limit is reached. */
+    public Optional<SseEmitter> subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            return Optional.empty();
+        }
+        return Optional.of(subscribe(new SseEmitter(timeoutMs)));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(ex -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        // the version tells the client which /all response the deltas apply on top of
+        String version = String.valueOf(catalogService.version());
+        subscriber.send(SseEmitter.event().name("ready").id(version).data(version));
+        return emitter;
+    }
+
+    // runs after CatalogServiceImpl's listener, so the tick below reads the change back
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSweetChanged(SweetChangedEvent event) {
+        if (!subscribers.isEmpty()) {
+            dirty.add(event.id());
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    void tick() {
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            List<SweetDelta> deltas = new ArrayList<>();
+            for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+                Long id = it.next();
+                it.remove();
+                deltas.add(catalogService.findById(id).map(SweetDelta::of).orElseGet(() -> SweetDelta.deleted(id)));
+            }
+            String version = String.valueOf(catalogService.version());
+            String json = toJson(deltas);
+            for (Subscriber s : subscribers) {
+                s.offer(deltas, json, version);
+            }
+        } catch (RuntimeException ex) {
+            // an exception would cancel the scheduled task; keep ticking
+            log.warn("Stock stream tick failed", ex);
+        }
+    }
+
+    void heartbeat() {
+        for (Subscriber s : subscribers) {
+            s.heartbeat();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ticker.shutdownNow();
+        subscribers.forEach(s -> s.emitter.complete());
+        senders.shutdown();
+    }
+
+    private String toJson(List<SweetDelta> deltas) {
+        try {
+            return objectMapper.writeValueAsString(deltas);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        // newest unsent delta per sweet, filled while a send is in flight
+        private final Map<Long, SweetDelta> pending = new LinkedHashMap<>();
+        private String pendingVersion;
+        private boolean sending;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(List<SweetDelta> deltas, String json, String version) {
+            synchronized (this) {
+                if (sending) {
+                    deltas.forEach(d -> pending.put(d.id(), d));
+                    pendingVersion = version;
+                    return;
+                }
+                sending = true;
+            }
+            // caught up: the batch serialized once for everybody will do
+            senders.execute(() -> deliver(changes(json, version)));
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            senders.execute(() -> deliver(SseEmitter.event().comment("keep-alive")));
+        }
+
+        void send(SseEmitter.SseEventBuilder event) {
+            synchronized (this) {
+                sending = true;
+            }
+            deliver(event);
+        }
+
+        private void deliver(SseEmitter.SseEventBuilder event) {
+            while (true) {
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException ex) {
+                    // client gone or emitter already completed
+                    subscribers.remove(this);
+                    emitter.completeWithError(ex);
+                    return;
+                }
+                List<SweetDelta> next;
+                String version;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        sending = false;
+                        return;
+                    }
+                    next = new ArrayList<>(pending.values());
+                    version = pendingVersion;
+                    pending.clear();
+                }
+                event = changes(toJson(next), version);
+            }
+        }
+
+        private SseEmitter.SseEventBuilder changes(String json, String version) {
+            return SseEmitter.event().name("changes").id(version).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+
+/**
+ * URLs of a stored image and its variants. thumbnailUrl and webpUrl are null when the
+ * variant could not be made (not a decodable image, too large, or no encoder).
+ */
+public record StoredImage(String hash, String url, String thumbnailUrl, String webpUrl) {
+
+    public static StoredImage of(ImageAsset asset) {
+        return new StoredImage(asset.getHash(), asset.getUrl(), asset.getThumbnailUrl(), asset.getWebpUrl());
+    }
+}
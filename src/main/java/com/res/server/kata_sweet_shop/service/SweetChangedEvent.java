@@ -0,0 +1,24 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+
+/**
+ * Published by SweetServiceImpl after a change to a sweet has been committed.
+ * SAVED carries the full new state, STOCK only the change in quantity, DELETED only the id.
+ */
+public record SweetChangedEvent(Type type, Long id, SweetResponse sweet, int stockDelta) {
+
+    public enum Type { SAVED, STOCK, DELETED }
+
+    public static SweetChangedEvent saved(SweetResponse sweet) {
+        return new SweetChangedEvent(Type.SAVED, sweet.getId(), sweet, 0);
+    }
+
+    public static SweetChangedEvent stock(Long id, int delta) {
+        return new SweetChangedEvent(Type.STOCK, id, null, delta);
+    }
+
+    public static SweetChangedEvent deleted(Long id) {
+        return new SweetChangedEvent(Type.DELETED, id, null, 0);
+    }
+}
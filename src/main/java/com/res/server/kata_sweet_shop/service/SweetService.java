@@ -1,25 +1,32 @@
 package com.res.server.kata_sweet_shop.service;
 
+import com.res.server.kata_sweet_shop.dto.CartItem;
 import com.res.server.kata_sweet_shop.dto.SweetRequest;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
 import com.res.server.kata_sweet_shop.entity.Sweet;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 
 public interface SweetService{
     Sweet create(SweetRequest sweetRequest);
+    // same, with an image that is already stored (READY) or still being uploaded (PENDING, image null)
+    Sweet create(SweetRequest sweetRequest, StoredImage image, ImageStatus imageStatus);
     Sweet update(Long id,SweetRequest sweetRequest);
 
     void delete(Long id);
-    List<Sweet> listAll();
+    List<SweetResponse> listAll();
 
-    List<Sweet> search(Optional<String> name, Optional<String>Category, Optional<BigDecimal> minPrice,
-                       Optional<BigDecimal> maxPrice);
+    List<SweetResponse> search(SweetSearch search);
     void purchasesweet(Long id,int qty);
     void restock(Long id,int qty);
-    Optional<Sweet> findById(Long id);
+    void checkout(List<CartItem> items);
+    Optional<SweetResponse> findById(Long id);
+    // called when a background image upload finishes, or fails (image null)
+    void setImage(Long id, StoredImage image, ImageStatus imageStatus);
 
 
 }
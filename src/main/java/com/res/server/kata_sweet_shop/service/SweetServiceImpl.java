@@ -1,105 +1,198 @@
 package com.res.server.kata_sweet_shop.service;
 
+import com.res.server.kata_sweet_shop.dto.CartItem;
 import com.res.server.kata_sweet_shop.dto.SweetRequest;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
 import com.res.server.kata_sweet_shop.entity.Sweet;
-import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
-import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
+import com.res.server.kata_sweet_shop.exception.InvalidRequestException;
 import com.res.server.kata_sweet_shop.repository.SweetRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SweetServiceImpl implements SweetService{
 
     private final SweetRepository sweetRepository;
+    private final AdaptiveConcurrencyControl concurrencyControl;
+    private final StockEngine stockEngine;
+    // every committed change is announced, so read-side caches can follow along
+    private final ApplicationEventPublisher events;
 
     /**
      * Creates a new Sweet entity from the given request.
-     * Throws IllegalArgumentException if name is missing.
+     * Throws InvalidRequestException if name is missing.
      */
     @Override
     public Sweet create(SweetRequest request) {
+        return create(request, null, request.getImageUrl() != null ? ImageStatus.READY : ImageStatus.NONE);
+    }
+
+    @Override
+    public Sweet create(SweetRequest request, StoredImage image, ImageStatus imageStatus) {
         if (request.getName() == null || request.getName().isBlank()) {
-            throw new IllegalArgumentException("Name is required");
+            throw new InvalidRequestException("Name is required");
         }
         if (request.getPrice() == null) {
-            throw new IllegalArgumentException("Price is required");
+            throw new InvalidRequestException("Price is required");
         }
-        System.out.println("Creating Sweet: " + request);
+        log.debug("Creating sweet: {}", request);
        Sweet sweet=Sweet.builder()
                .name(request.getName())
                .category(request.getCategory())
                .price(request.getPrice())
                .quantity(request.getQuantity())
-               .imageUrl(request.getImageUrl())
+               .imageUrl(image != null ? image.url() : request.getImageUrl())
+               .thumbnailUrl(image != null ? image.thumbnailUrl() : null)
+               .webpUrl(image != null ? image.webpUrl() : null)
+               .imageHash(image != null ? image.hash() : null)
+               .imageStatus(imageStatus)
                .build();
-        System.out.println("Built Sweet entity: " + sweet);
-        return sweetRepository.save(sweet);
+        Sweet saved = sweetRepository.save(sweet);
+        stockEngine.onCreated(saved);
+        events.publishEvent(SweetChangedEvent.saved(SweetResponse.from(saved)));
+        return saved;
     }
 
 // Update an existing Sweet entity by modifying its fields and saving.
 // Using the builder is not ideal here because we need to preserve the existing ID and DB-managed fields.
+// Runs through AdaptiveConcurrencyControl so a version conflict with a concurrent purchase is retried
+// instead of surfacing as a 500, and hot sweets are read with a row lock instead.
+// When the stock engine owns stock levels, the new quantity goes to the engine and the row's quantity
+// column is left alone (Sweet is @DynamicUpdate, so an unchanged column is not written).
 @Override
 public Sweet update(Long id, SweetRequest request) {
-    System.out.println("Updating Sweet with ID: " + id + " using data: " + request);
-    Sweet sweet = getSweetById(id);
-    sweet.setName(request.getName());
-    sweet.setCategory(request.getCategory());
-    sweet.setPrice(request.getPrice());
-    sweet.setQuantity(request.getQuantity());
-    sweet.setImageUrl(request.getImageUrl());
+    log.debug("Updating sweet {} with {}", id, request);
+    Integer quantity = request.getQuantity();
+    boolean viaEngine = quantity != null && stockEngine.holdsStock();
+    Sweet saved = concurrencyControl.withSweet(id, sweet -> {
+        sweet.setName(request.getName());
+        sweet.setCategory(request.getCategory());
+        sweet.setPrice(request.getPrice());
+        if (!Objects.equals(sweet.getImageUrl(), request.getImageUrl())) {
+            // variants belong to the uploaded image, not to a URL set by hand
+            sweet.setThumbnailUrl(null);
+            sweet.setWebpUrl(null);
+            sweet.setImageHash(null);
+        }
+        sweet.setImageUrl(request.getImageUrl());
+        if (request.getImageUrl() != null) {
+            sweet.setImageStatus(ImageStatus.READY);
+        } else if (sweet.getImageStatus() != ImageStatus.PENDING) {
+            // a pending upload still fills the image in when it finishes
+            sweet.setImageStatus(ImageStatus.NONE);
+        }
 
-    if (request.getQuantity() != null) {
-        sweet.setQuantity(request.getQuantity());
+        if (quantity != null && !viaEngine) {
+            sweet.setQuantity(quantity);
+        }
+        return sweetRepository.saveAndFlush(sweet);
+    });
+    if (viaEngine) {
+        stockEngine.setStock(id, quantity);
+        saved.setQuantity(quantity);
     }
-    return sweetRepository.save(sweet);
+    events.publishEvent(SweetChangedEvent.saved(SweetResponse.from(saved)));
+    return saved;
 }
-    // Private helper to avoid repetition
-    private Sweet getSweetById(Long id) {
-        return sweetRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
-    }
     public  void delete(Long id){
         sweetRepository.deleteById(id);
+        stockEngine.onDeleted(id);
+        events.publishEvent(SweetChangedEvent.deleted(id));
     }
-    public List<Sweet> listAll(){
-      return sweetRepository.findAll();
+    // reads select straight into SweetResponse: no managed entities, no dirty-checking snapshots,
+    // and read-only transactions run with Hibernate flushing switched off
+    @Override
+    @Transactional(readOnly = true)
+    public List<SweetResponse> listAll(){
+      return withLiveStock(sweetRepository.findAllResponses());
     }
     @Override
-    public List<Sweet> search(Optional<String> name, Optional<String> category, Optional<BigDecimal> minPrice, Optional<BigDecimal> maxPrice) {
-        if (name.isPresent()) return sweetRepository.findByNameContainingIgnoreCase(name.get());
-        if (category.isPresent()) return sweetRepository.findByCategoryIgnoreCase(category.get());
-        if (minPrice.isPresent() && maxPrice.isPresent()) return sweetRepository.findByPriceRange(minPrice.get(), maxPrice.get());
-        return sweetRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<SweetResponse> search(SweetSearch search) {
+        search.validate();
+        return withLiveStock(sweetRepository.search(search));
     }
+    // stock decisions are made by the configured StockEngine, which also owns the transaction
     @Override
-    @Transactional
     public void purchasesweet(Long id, int qty) {
-        Sweet s = sweetRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
-        if (s.getQuantity() < qty) {
-            throw new InsufficientStockException(
-                    String.format("Requested %d but only %d available", qty, s.getQuantity())
-            );
+        if (qty <= 0) {
+            throw new InvalidRequestException("Quantity must be positive");
         }
-        s.setQuantity(s.getQuantity() - qty);
-        sweetRepository.save(s);
+        stockEngine.purchase(id, qty);
+        events.publishEvent(SweetChangedEvent.stock(id, -qty));
     }
     @Override
-    @Transactional
     public void restock(Long id, int qty) {
-        Sweet s = sweetRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Sweet not found"));
-        s.setQuantity(s.getQuantity() + qty);
-        sweetRepository.save(s);
+        if (qty <= 0) {
+            throw new InvalidRequestException("Quantity must be positive");
+        }
+        stockEngine.restock(id, qty);
+        events.publishEvent(SweetChangedEvent.stock(id, qty));
+    }
+    /**
+     * Buys a whole basket in one go. Repeated ids are merged and the lines are
+     * handed to the engine in ascending id order.
+     */
+    @Override
+    public void checkout(List<CartItem> items) {
+        if (items == null || items.isEmpty()) {
+            throw new InvalidRequestException("Basket is empty");
+        }
+        SortedMap<Long, Integer> lines = new TreeMap<>();
+        for (CartItem item : items) {
+            if (item.getId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new InvalidRequestException("Each item needs an id and a positive quantity");
+            }
+            lines.merge(item.getId(), item.getQuantity(), Integer::sum);
+        }
+        stockEngine.checkout(lines);
+        lines.forEach((id, qty) -> events.publishEvent(SweetChangedEvent.stock(id, -qty)));
     }
     @Override
-    public Optional<Sweet> findById(Long id) {
-        return sweetRepository.findById(id);
+    @Transactional(readOnly = true)
+    public Optional<SweetResponse> findById(Long id) {
+        return sweetRepository.findResponseById(id).map(this::withLiveStock);
+    }
+
+    @Override
+    public void setImage(Long id, StoredImage image, ImageStatus imageStatus) {
+        int updated = image == null
+                ? sweetRepository.updateImage(id, null, null, null, null, imageStatus)
+                : sweetRepository.updateImage(id, image.url(), image.thumbnailUrl(), image.webpUrl(), image.hash(), imageStatus);
+        if (updated == 0) {
+            // deleted while its image was uploading
+            return;
+        }
+        sweetRepository.findResponseById(id)
+                .map(this::withLiveStock)
+                .ifPresent(s -> events.publishEvent(SweetChangedEvent.saved(s)));
+    }
+
+    // the ledger engine keeps stock in memory and the table can be behind it
+    private List<SweetResponse> withLiveStock(List<SweetResponse> items) {
+        if (stockEngine.holdsStock()) {
+            items.replaceAll(this::withLiveStock);
+        }
+        return items;
+    }
+
+    private SweetResponse withLiveStock(SweetResponse item) {
+        OptionalInt live = stockEngine.currentStock(item.getId());
+        return live.isPresent() ? item.withQuantity(live.getAsInt()) : item;
     }
 }
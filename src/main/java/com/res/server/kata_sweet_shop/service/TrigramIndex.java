@@ -0,0 +1,287 @@
+package com.res.server.kata_sweet_shop.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram inverted index over sweet names, used for the name search.
+ * <p>
+ * Every name is indexed by the trigrams of its full lower-cased text (for substring matching) and by
+ * the trigrams of each word padded with spaces, pg_trgm style (for typo tolerance). A substring query
+ * intersects the posting lists of its trigrams and verifies the few candidates with contains().
+ * A fuzzy query counts how many of its padded trigrams each name has, and names covering enough of
+ * them are returned after the substring hits.
+ * <p>
+ * Documents are dense ints with sorted int posting lists. Renames and deletes leave tombstones that
+ * get compacted once they outnumber the live documents. Names change rarely (admin edits), so one
+ * read/write lock is enough.
+ */
+public class TrigramIndex {
+
+    // ranking tiers for substring hits
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_START = 2;
+    private static final int INSIDE = 3;
+
+    private final double fuzzyMinSimilarity;
+    private final int fuzzyLimit;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] sweetIds = new long[64];
+    private String[] names = new String[64];
+    private boolean[] dead = new boolean[64];
+    private int docCount;
+    private int deadCount;
+    private final Map<Long, Integer> docOf = new HashMap<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    public TrigramIndex(double fuzzyMinSimilarity, int fuzzyLimit) {
+        this.fuzzyMinSimilarity = fuzzyMinSimilarity;
+        this.fuzzyLimit = fuzzyLimit;
+    }
+
+    /** Replaces the whole index; names maps sweet id to name. */
+    public void rebuild(Map<Long, String> names) {
+        lock.writeLock().lock();
+        try {
+            reset();
+            names.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(Long id, String name) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docOf.get(id);
+            if (doc != null && names[doc].equals(normalize(name))) {
+                return;
+            }
+            kill(id);
+            add(id, name);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            kill(id);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of sweets whose name contains the query (ignoring case), best matches first:
+     * exact name, then prefix, then start of a word, then anywhere, shorter names first within a tier.
+     * Up to fuzzyLimit names that only resemble the query follow, most similar first.
+     */
+    public List<Long> search(String query) {
+        String q = normalize(query);
+        lock.readLock().lock();
+        try {
+            List<Integer> hits = q.length() < 3 ? scan(q) : intersect(q);
+            hits.sort(Comparator.<Integer>comparingInt(d -> tier(names[d], q))
+                    .thenComparingInt(d -> names[d].length())
+                    .thenComparingLong(d -> sweetIds[d]));
+            List<Long> ids = new ArrayList<>(hits.size());
+            hits.forEach(d -> ids.add(sweetIds[d]));
+            if (q.length() >= 4 && fuzzyLimit > 0) {
+                fuzzy(q, new HashSet<>(hits)).forEach(d -> ids.add(sweetIds[d]));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Integer> scan(String q) {
+        List<Integer> hits = new ArrayList<>();
+        for (int d = 0; d < docCount; d++) {
+            if (!dead[d] && names[d].contains(q)) {
+                hits.add(d);
+            }
+        }
+        return hits;
+    }
+
+    private List<Integer> intersect(String q) {
+        Set<Long> grams = new HashSet<>();
+        rawTrigrams(q, grams);
+        List<IntList> lists = new ArrayList<>(grams.size());
+        for (long g : grams) {
+            IntList list = postings.get(g);
+            if (list == null) {
+                return new ArrayList<>();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(l -> l.size));
+        int[] candidates = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = retainAll(candidates, count, lists.get(i));
+        }
+        List<Integer> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int d = candidates[i];
+            if (!dead[d] && names[d].contains(q)) {
+                hits.add(d);
+            }
+        }
+        return hits;
+    }
+
+    private List<Integer> fuzzy(String q, Set<Integer> exclude) {
+        Set<Long> grams = new HashSet<>();
+        paddedTrigrams(q, grams);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (long g : grams) {
+            IntList list = postings.get(g);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size; i++) {
+                shared.merge(list.values[i], 1, Integer::sum);
+            }
+        }
+        int needed = (int) Math.ceil(grams.size() * fuzzyMinSimilarity);
+        List<Integer> similar = new ArrayList<>();
+        shared.forEach((d, n) -> {
+            if (n >= needed && !dead[d] && !exclude.contains(d)) {
+                similar.add(d);
+            }
+        });
+        similar.sort(Comparator.<Integer>comparingInt(d -> -shared.get(d))
+                .thenComparingInt(d -> names[d].length())
+                .thenComparingLong(d -> sweetIds[d]));
+        return similar.size() > fuzzyLimit ? similar.subList(0, fuzzyLimit) : similar;
+    }
+
+    // keeps the values of candidates[0..count) that are also in the sorted list; returns the new count
+    private static int retainAll(int[] candidates, int count, IntList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            int c = candidates[i];
+            while (j < list.size && list.values[j] < c) {
+                j++;
+            }
+            if (j < list.size && list.values[j] == c) {
+                candidates[kept++] = c;
+            }
+        }
+        return kept;
+    }
+
+    private static int tier(String name, String q) {
+        if (name.equals(q)) {
+            return EXACT;
+        }
+        if (name.startsWith(q)) {
+            return PREFIX;
+        }
+        return name.contains(" " + q) ? WORD_START : INSIDE;
+    }
+
+    private void add(Long id, String name) {
+        String normalized = normalize(name);
+        if (docCount == sweetIds.length) {
+            int size = docCount * 2;
+            sweetIds = Arrays.copyOf(sweetIds, size);
+            names = Arrays.copyOf(names, size);
+            dead = Arrays.copyOf(dead, size);
+        }
+        int doc = docCount++;
+        sweetIds[doc] = id;
+        names[doc] = normalized;
+        docOf.put(id, doc);
+        Set<Long> grams = new HashSet<>();
+        rawTrigrams(normalized, grams);
+        paddedTrigrams(normalized, grams);
+        // docs only ever get appended, so every posting list stays sorted
+        for (long g : grams) {
+            postings.computeIfAbsent(g, k -> new IntList()).add(doc);
+        }
+    }
+
+    private void kill(Long id) {
+        Integer doc = docOf.remove(id);
+        if (doc != null) {
+            dead[doc] = true;
+            deadCount++;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (deadCount < 1024 || deadCount < docCount - deadCount) {
+            return;
+        }
+        Map<Long, String> live = new HashMap<>();
+        for (int d = 0; d < docCount; d++) {
+            if (!dead[d]) {
+                live.put(sweetIds[d], names[d]);
+            }
+        }
+        reset();
+        live.forEach(this::add);
+    }
+
+    private void reset() {
+        docOf.clear();
+        postings.clear();
+        Arrays.fill(dead, false);
+        docCount = 0;
+        deadCount = 0;
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static void rawTrigrams(String s, Set<Long> out) {
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            out.add(key(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2)));
+        }
+    }
+
+    // "  w", " wo", "wor", "ord", "rd " for each word, so that typos in one place only cost a few trigrams
+    private static void paddedTrigrams(String s, Set<Long> out) {
+        for (String word : s.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                rawTrigrams("  " + word + " ", out);
+            }
+        }
+    }
+
+    // three 16-bit chars packed into one long
+    private static long key(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.res.server.kata_sweet_shop.service;
+
+/**
+ * Published when a user is created or its password or roles change, so cached copies of the
+ * user (see CustomUserDetailsService) are dropped once the change is committed.
+ */
+public record UserChangedEvent(String username) {
+}
@@ -2,8 +2,10 @@ package com.res.server.kata_sweet_shop.service;
 
 import com.res.server.kata_sweet_shop.dto.RegisterRequest;
 import com.res.server.kata_sweet_shop.entity.User;
+import com.res.server.kata_sweet_shop.exception.InvalidRequestException;
 import com.res.server.kata_sweet_shop.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,23 +17,24 @@ import java.util.HashSet;
 public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher events;
     @Transactional // why using Transactional here?
     // because we want to make sure that the user is saved in the database
     // and if there is any error, the transaction is rolled back
     /**
      * Registers a new user. Validates username and email are present and unique.
-     * Throws IllegalArgumentException if validation fails.
+     * Throws InvalidRequestException if validation fails.
      */
     @Override
     public User register(RegisterRequest request) {
         if (request.getUsername() == null || request.getUsername().isBlank()) {
-            throw new IllegalArgumentException("Username is required");
+            throw new InvalidRequestException("Username is required");
         }
         if (request.getEmail() == null || request.getEmail().isBlank()) {
-            throw new IllegalArgumentException("Email is required");
+            throw new InvalidRequestException("Email is required");
         }
         if (userRepository.existsByUsername(request.getUsername())) {
-            throw new IllegalArgumentException("Username already exists");
+            throw new InvalidRequestException("Username already exists");
         }
         User user = User.builder()
                 .username(request.getUsername())
@@ -43,6 +46,8 @@ public class UserServiceImpl implements UserService {
             user.setRoles(new HashSet<>());
         }
         user.getRoles().add("USER"); // default role
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        events.publishEvent(new UserChangedEvent(saved.getUsername()));
+        return saved;
     }
 }
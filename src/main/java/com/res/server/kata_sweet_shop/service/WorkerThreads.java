@@ -0,0 +1,21 @@
+package com.res.server.kata_sweet_shop.service;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for pools that run blocking work (JDBC, HTTP). With spring.threads.virtual.enabled they
+ * are virtual threads, like the request threads; otherwise daemon platform threads. Timers and
+ * other short, non-blocking tasks keep their own platform threads.
+ */
+final class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    static ThreadFactory factory(String name, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(name + "-", 0).factory();
+        }
+        return Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+    }
+}
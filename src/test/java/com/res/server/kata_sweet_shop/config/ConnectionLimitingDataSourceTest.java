@@ -0,0 +1,66 @@
+package com.res.server.kata_sweet_shop.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionLimitingDataSourceTest {
+
+    @Test
+    void waitsForAPermit_andGetsOneWhenAConnectionIsClosed() throws Exception {
+        DataSource pool = mock(DataSource.class);
+        Connection physical = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(physical);
+        ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(pool, 1, 5000);
+
+        Connection first = limited.getConnection();
+        CompletableFuture<Connection> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limited.getConnection();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        while (limited.getWaiting() == 0) {
+            Thread.sleep(1);
+        }
+        assertFalse(second.isDone());
+
+        first.close();
+        // closing twice must not hand out a second permit
+        first.close();
+
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limited.getAvailablePermits());
+        verify(physical, times(2)).close();
+        verify(pool, times(2)).getConnection();
+    }
+
+    @Test
+    void timesOut_withoutTouchingThePool() throws Exception {
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenReturn(mock(Connection.class));
+        ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(pool, 1, 20);
+        limited.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, limited::getConnection);
+        verify(pool, times(1)).getConnection();
+    }
+
+    @Test
+    void permitIsReturned_whenThePoolFails() throws Exception {
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+        ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(pool, 1, 20);
+
+        assertThrows(SQLTransientConnectionException.class, limited::getConnection);
+        assertEquals(1, limited.getAvailablePermits());
+    }
+}
@@ -0,0 +1,41 @@
+package com.res.server.kata_sweet_shop.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTimingTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestTiming.end();
+    }
+
+    /**
+     * Nested repository calls count once; controller time excludes DB and serialization.
+     */
+    @Test
+    void format_reportsPhasesInMilliseconds() {
+        RequestTiming timing = RequestTiming.begin();
+        assertSame(timing, RequestTiming.current());
+        timing.add(RequestTiming.Phase.AUTH, 1_250_000);
+        timing.handlerStarted(true);
+
+        boolean outer = timing.enterDb();
+        boolean inner = timing.enterDb();
+        timing.sqlStatement();
+        timing.exitDb(inner, 4_000_000);
+        timing.sqlStatement();
+        timing.exitDb(outer, 5_000_000);
+        timing.add(RequestTiming.Phase.SERIALIZATION, 70_000);
+
+        String header = timing.format(System.nanoTime());
+        assertTrue(header.startsWith("auth;dur=1.25, controller;dur="), header);
+        assertTrue(header.contains("db;dur=5.00;desc=\"1 calls, 2 SQL\", ser;dur=0.07, total;dur="), header);
+        assertTrue(timing.isAdmin());
+
+        RequestTiming.end();
+        assertNull(RequestTiming.current());
+    }
+}
@@ -0,0 +1,45 @@
+package com.res.server.kata_sweet_shop.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplingLogFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    /**
+     * The longest matching prefix decides; WARN and above, and unlisted categories, always pass.
+     */
+    @Test
+    void decide_samplesListedCategoriesBelowWarn() {
+        SamplingLogFilter filter = new SamplingLogFilter();
+        filter.setContext(context);
+        filter.setRates("shop.hot=1000000, shop.hot.kept=1, bogus");
+        filter.start();
+
+        int kept = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (filter.decide(event("shop.hot.Controller", Level.INFO)) == FilterReply.NEUTRAL) {
+                kept++;
+            }
+        }
+        assertTrue(kept < 5, "kept " + kept + " of 1000");
+        assertEquals(FilterReply.NEUTRAL, filter.decide(event("shop.hot.Controller", Level.WARN)));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(event("shop.hot.kept.Service", Level.DEBUG)));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(event("shop.cold.Service", Level.INFO)));
+        assertTrue(filter.isStarted());
+    }
+
+    private LoggingEvent event(String logger, Level level) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLoggerName(logger);
+        event.setLevel(level);
+        event.setMessage("m");
+        return event;
+    }
+}
@@ -1,8 +1,24 @@
 package com.res.server.kata_sweet_shop.integration;
 
 
+import com.res.server.kata_sweet_shop.dto.CartItem;
+import com.res.server.kata_sweet_shop.dto.SearchCursor;
+import com.res.server.kata_sweet_shop.dto.SweetRequest;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
 import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.entity.User;
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.repository.ImageAssetRepository;
 import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import com.res.server.kata_sweet_shop.repository.UserRepository;
+import com.res.server.kata_sweet_shop.service.CatalogExporter;
+import com.res.server.kata_sweet_shop.service.CatalogService;
+import com.res.server.kata_sweet_shop.service.ImageStorage;
+import com.res.server.kata_sweet_shop.service.SweetService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,21 +28,42 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.cloudinary.Cloudinary;
@@ -40,7 +77,13 @@ import com.cloudinary.Uploader;
     "spring.datasource.username=sa",
     "spring.datasource.password=password",
     "spring.jpa.hibernate.ddl-auto=create-drop",
-    "spring.datasource.driver-class-name=org.h2.Driver"
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "app.images.cache.dir=target/image-cache",
+    // only requests sending X-Request-Timing are profiled
+    "app.timing.sample-rate=0",
+    "app.metrics.scrape.password=scrape-secret",
+    // Spring Boot tests switch metrics export off by default
+    "management.prometheus.metrics.export.enabled=true"
 })
 @ActiveProfiles("test")
 public class SweetIntegrationTest {
@@ -51,6 +94,27 @@ public class SweetIntegrationTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private SweetService sweetService;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private CatalogExporter catalogExporter;
+
+    @Autowired
+    private ImageAssetRepository imageAssets;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean
+    private ImageStorage imageStorage;
+
     // Create a TestConfiguration that replaces the real Cloudinary bean with a mock
     @TestConfiguration
     static class CloudinaryTestConfig {
@@ -87,6 +151,137 @@ public class SweetIntegrationTest {
         assertEquals("Ladoo", fetched.getName());
     }
 
+    /**
+     * Purchase and restock go through single UPDATE statements; overselling must be rejected.
+     */
+    @Test
+    void purchase_and_restock_update_stock_atomically() {
+        Sweet s = new Sweet();
+        s.setName("Barfi");
+        s.setCategory("Traditional");
+        s.setPrice(BigDecimal.valueOf(30.0));
+        s.setQuantity(5);
+        Long id = repo.save(s).getId();
+
+        sweetService.purchasesweet(id, 3);
+        assertThrows(InsufficientStockException.class, () -> sweetService.purchasesweet(id, 3));
+        sweetService.restock(id, 4);
+
+        assertEquals(6, repo.findById(id).orElseThrow().getQuantity());
+    }
+
+    /**
+     * Every filter given narrows the result, and keyset pages continue exactly where the last one ended.
+     */
+    @Test
+    void search_combinesFilters_andPagesByCursor() {
+        for (String[] row : new String[][]{{"Kaju Katli", "40"}, {"Kesar Katli", "55"}, {"Pista Katli", "70"}, {"Katli Cake", "90"}}) {
+            Sweet s = new Sweet();
+            s.setName(row[0]);
+            s.setCategory("Search Test");
+            s.setPrice(new BigDecimal(row[1]));
+            repo.save(s);
+        }
+
+        SweetSearch filtered = SweetSearch.builder().name("KATLI").category("search test")
+                .minPrice(BigDecimal.valueOf(50)).maxPrice(BigDecimal.valueOf(80)).build();
+        assertEquals(List.of("Kesar Katli", "Pista Katli"),
+                sweetService.search(filtered).stream().map(SweetResponse::getName).toList());
+
+        SweetSearch firstPage = SweetSearch.builder().category("Search Test")
+                .sort(SweetSearch.SortField.PRICE).descending(true).limit(2).build();
+        List<SweetResponse> first = sweetService.search(firstPage);
+        assertEquals(List.of("Katli Cake", "Pista Katli"), first.stream().map(SweetResponse::getName).toList());
+
+        SearchCursor cursor = SearchCursor.decode(
+                SearchCursor.after(first.get(1), SweetSearch.SortField.PRICE).encode());
+        SweetSearch secondPage = firstPage.toBuilder().after(cursor).build();
+        assertEquals(List.of("Kesar Katli", "Kaju Katli"),
+                sweetService.search(secondPage).stream().map(SweetResponse::getName).toList());
+    }
+
+    /**
+     * Keyset pages walk the catalog by id; the NDJSON export writes one sweet per line.
+     */
+    @Test
+    void catalog_pagesByIdCursor_andStreamsNdjson() throws Exception {
+        List<Long> created = new ArrayList<>();
+        for (String name : List.of("Peda", "Rasgulla", "Sandesh")) {
+            Sweet s = new Sweet();
+            s.setName(name);
+            s.setCategory("Paging Test");
+            s.setPrice(BigDecimal.TEN);
+            created.add(sweetService.create(toRequest(s)).getId());
+        }
+
+        List<SweetResponse> first = catalogService.page(created.get(0) - 1, 2);
+        assertEquals(created.subList(0, 2), first.stream().map(SweetResponse::getId).toList());
+        List<SweetResponse> rest = catalogService.page(first.get(1).getId(), SweetSearch.MAX_LIMIT);
+        assertEquals(created.get(2), rest.get(0).getId());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        catalogExporter.writeNdjson(out);
+        List<String> lines = List.of(out.toString(StandardCharsets.UTF_8).split("\n"));
+        assertEquals(repo.count(), lines.size());
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("{\"id\":" + created.get(1) + ",\"name\":\"Rasgulla\"")));
+    }
+
+    /**
+     * A matching If-None-Match gets 304 until the catalog changes.
+     */
+    @Test
+    void catalog_answersConditionalGet_until_itChanges() throws Exception {
+        String etag = mockMvc.perform(get("/api/sweets/all"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Last-Modified"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/api/sweets/all").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        // the gzip variant is a different representation with its own ETag
+        mockMvc.perform(get("/api/sweets/all").header("If-None-Match", etag).header("Accept-Encoding", "gzip, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"));
+
+        Sweet s = new Sweet();
+        s.setName("Soan Papdi");
+        s.setPrice(BigDecimal.ONE);
+        sweetService.create(toRequest(s));
+
+        mockMvc.perform(get("/api/sweets/all").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
+    private static SweetRequest toRequest(Sweet s) {
+        SweetRequest req = new SweetRequest();
+        req.setName(s.getName());
+        req.setCategory(s.getCategory());
+        req.setPrice(s.getPrice());
+        req.setQuantity(s.getQuantity());
+        return req;
+    }
+
+    /**
+     * A basket is all or nothing: one line that doesn't fit rolls back the others.
+     */
+    @Test
+    void checkout_buysWholeBasket_orNothing() {
+        Long a = repo.save(Sweet.builder().name("Peda").category("Traditional")
+                .price(BigDecimal.TEN).quantity(5).build()).getId();
+        Long b = repo.save(Sweet.builder().name("Kaju Katli").category("Traditional")
+                .price(BigDecimal.TEN).quantity(1).build()).getId();
+
+        sweetService.checkout(List.of(new CartItem(b, 1), new CartItem(a, 2)));
+        assertEquals(3, repo.findById(a).orElseThrow().getQuantity());
+        assertEquals(0, repo.findById(b).orElseThrow().getQuantity());
+
+        assertThrows(InsufficientStockException.class,
+                () -> sweetService.checkout(List.of(new CartItem(a, 1), new CartItem(b, 1))));
+        assertEquals(3, repo.findById(a).orElseThrow().getQuantity());
+    }
+
     /**
      * Integration test for multipart image upload to /api/sweets/add.
      * Cloudinary is mocked to always return a dummy image URL.
@@ -109,7 +304,139 @@ public class SweetIntegrationTest {
         mockMvc.perform(multipart("/api/sweets/add")
                 .file(sweetPart)
                 .file(imagePart))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imageStatus").value("PENDING"));
+
+        // the upload finishes in the background and patches the URL in
+        Sweet saved = repo.findAll().stream()
+                .filter(s -> "Test Sweet".equals(s.getName()))
+                .findFirst().orElseThrow();
+        long deadline = System.currentTimeMillis() + 5000;
+        Sweet current = repo.findById(saved.getId()).orElseThrow();
+        while (current.getImageStatus() == ImageStatus.PENDING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            current = repo.findById(saved.getId()).orElseThrow();
+        }
+        assertEquals(ImageStatus.READY, current.getImageStatus());
+        assertEquals("http://dummy.com/image.jpg", current.getImageUrl());
+    }
+
+    /**
+     * /images/{hash} fills the local cache from the storage backend once, then answers
+     * conditional and range requests from disk.
+     */
+    @Test
+    void image_isServedFromLocalCache_withEtagAndRanges() throws Exception {
+        // random, so files cached by an earlier run don't turn the miss into a hit
+        String hash = UUID.randomUUID().toString().replace("-", "").repeat(2);
+        imageAssets.save(ImageAsset.builder().hash(hash).url("http://dummy.com/c.png").contentType("image/png").build());
+        doAnswer(inv -> new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.US_ASCII)))
+                .when(imageStorage).open("http://dummy.com/c.png");
+
+        mockMvc.perform(get("/images/" + hash + ".png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + hash + "\""))
+                .andExpect(header().string("Cache-Control", containsString("immutable")))
+                .andExpect(header().string("Content-Type", "image/png"))
+                .andExpect(content().string("0123456789"));
+        mockMvc.perform(get("/images/" + hash).header("If-None-Match", "\"" + hash + "\""))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/images/" + hash).header("Range", "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 2-5/10"))
+                .andExpect(content().string("2345"));
+        mockMvc.perform(get("/images/" + hash).header("Range", "bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        mockMvc.perform(get("/images/" + "d".repeat(64)))
+                .andExpect(status().isNotFound());
+        verify(imageStorage, times(1)).open("http://dummy.com/c.png");
+    }
+
+    @Test
+    @WithMockUser(username = "buyer", roles = {"USER"})
+    void purchases_areCountedPerSweet_andSoldOutAnswers409() throws Exception {
+        Sweet sweet = repo.save(Sweet.builder().name("Metered Peda").category("Milk")
+                .price(new BigDecimal("5.00")).quantity(3).build());
+        String path = "/api/sweets/purchase/" + sweet.getId();
+
+        mockMvc.perform(post(path).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":2}"))
                 .andExpect(status().isOk());
+        double soldOutBefore = meterRegistry.counter("sweetshop.purchase.insufficient.stock").count();
+        mockMvc.perform(post(path).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":2}"))
+                .andExpect(status().isConflict());
+
+        assertEquals(2.0, meterRegistry.get("sweetshop.purchase.units")
+                .tag("sweet", String.valueOf(sweet.getId())).counter().count());
+        assertEquals(soldOutBefore + 1, meterRegistry.counter("sweetshop.purchase.insufficient.stock").count());
+        assertNotNull(meterRegistry.find("http.server.requests").tag("uri", "/api/sweets/purchase/{id}").timer());
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+    }
+
+    @Test
+    void prometheus_needsScraperCredentials_healthStaysOpen() throws Exception {
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "wrong")))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "scrape-secret")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("sweetshop_")));
+    }
+
+    @Test
+    @WithMockUser(username = "buyer", roles = {"USER"})
+    void prometheus_isClosedToOrdinaryUsers() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void adminsAskingForTimings_getServerTimingHeader() throws Exception {
+        Sweet sweet = repo.save(Sweet.builder().name("Timed Jalebi").category("Fried")
+                .price(new BigDecimal("3.00")).quantity(5).build());
+
+        mockMvc.perform(get("/api/sweets/search").param("name", "jalebi").header("X-Request-Timing", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Server-Timing", matchesPattern(
+                        "auth;dur=\\d+\\.\\d\\d, controller;dur=\\d+\\.\\d\\d, db;dur=\\d+\\.\\d\\d;desc=\"\\d+ calls, \\d+ SQL\", "
+                                + "ser;dur=\\d+\\.\\d\\d, total;dur=\\d+\\.\\d\\d")));
+        mockMvc.perform(get("/api/sweets/" + sweet.getId()))
+                .andExpect(header().doesNotExist("Server-Timing"));
+    }
+
+    @Test
+    @WithMockUser(username = "buyer", roles = {"USER"})
+    void serverTiming_isHiddenFromNonAdmins() throws Exception {
+        mockMvc.perform(get("/api/sweets/search").param("name", "jalebi").header("X-Request-Timing", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Server-Timing"));
+    }
+
+    @Test
+    void login_rehashesPasswordsWithAnOutdatedCost() throws Exception {
+        userRepository.save(User.builder().username("old-hash").email("old-hash@example.com")
+                .password(new BCryptPasswordEncoder(4).encode("secret")).roles(Set.of("USER")).build());
+
+        mockMvc.perform(post("/api/auth/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"old-hash\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk());
+
+        String rehashed = userRepository.findByUsername("old-hash").orElseThrow().getPassword();
+        assertTrue(rehashed.startsWith("$2a$10$"), rehashed);
+        mockMvc.perform(post("/api/auth/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"old-hash\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(username = "buyer", roles = {"USER"})
+    void invalidSearchInput_isA400_withTheReason() throws Exception {
+        mockMvc.perform(get("/api/sweets/search").param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor"));
+        mockMvc.perform(get("/api/sweets/search").param("sort", "colour"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Unknown sort field: colour"));
     }
 
     /**
@@ -0,0 +1,366 @@
+package com.res.server.kata_sweet_shop.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.TestcontainersConfiguration;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.entity.User;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import com.res.server.kata_sweet_shop.repository.UserRepository;
+import com.res.server.kata_sweet_shop.service.SweetService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mixed workload against the real HTTP stack and PostgreSQL (Testcontainers, so Docker is needed).
+ * <p>
+ * Hundreds of buyers hammer one hot sweet (and some cold ones) while readers fetch the catalog,
+ * some clients keep logging in and admins restock. Afterwards it prints throughput, p50/p99/p99.9
+ * latency and error counts per operation, writes them to target/load-report.json, and checks the
+ * stock invariants: no sweet oversold, and final stock = initial + restocked - sold.
+ * <p>
+ * Tagged "load" and excluded from the normal build; run it with {@code ./mvnw -Pload test}.
+ * Sizes can be changed with -Dload.duration-seconds, -Dload.buyers, -Dload.readers, -Dload.logins,
+ * -Dload.restockers and -Dload.hot-stock.
+ */
+@Tag("load")
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "app.jwt.secret=load-test-secret-load-test-secret-load-test-secret!!",
+        "app.jwt.expiration-ms=3600000",
+        "cloudinary.cloud-name=none",
+        "cloudinary.api-key=none",
+        "cloudinary.api-secret=none",
+        "frontend.url=http://localhost"
+})
+class StoreLoadTest {
+
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration-seconds", 20);
+    private static final int BUYERS = Integer.getInteger("load.buyers", 200);
+    private static final int READERS = Integer.getInteger("load.readers", 50);
+    private static final int LOGINS = Integer.getInteger("load.logins", 10);
+    private static final int RESTOCKERS = Integer.getInteger("load.restockers", 2);
+    private static final int HOT_STOCK = Integer.getInteger("load.hot-stock", 2000);
+    private static final int COLD_SWEETS = 50;
+    private static final int COLD_STOCK = 1000;
+    private static final int RESTOCK_QTY = 5;
+    private static final int ACCOUNTS = 20;
+    private static final String PASSWORD = "load-test-password";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private SweetRepository sweetRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SweetService sweetService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @Test
+    void mixedWorkload_keepsStockConsistent() throws Exception {
+        // one hash for every account; hashing it per account would make the setup take minutes
+        String hash = passwordEncoder.encode(PASSWORD);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            userRepository.save(User.builder().username("buyer" + i).email("buyer" + i + "@load.test")
+                    .password(hash).roles(Set.of("USER")).build());
+        }
+        userRepository.save(User.builder().username("load-admin").email("load-admin@load.test")
+                .password(hash).roles(Set.of("USER", "ADMIN")).build());
+
+        Map<Long, Integer> initial = new LinkedHashMap<>();
+        Long hot = sweetRepository.save(sweet("Hot Ladoo", HOT_STOCK)).getId();
+        initial.put(hot, HOT_STOCK);
+        List<Long> cold = new ArrayList<>();
+        for (int i = 0; i < COLD_SWEETS; i++) {
+            Long id = sweetRepository.save(sweet("Cold Barfi " + i, COLD_STOCK)).getId();
+            cold.add(id);
+            initial.put(id, COLD_STOCK);
+        }
+        List<String> buyerTokens = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            buyerTokens.add(login("buyer" + i).orElseThrow());
+        }
+        String adminToken = login("load-admin").orElseThrow();
+
+        Map<Long, AtomicLong> sold = new ConcurrentHashMap<>();
+        Map<Long, AtomicLong> restocked = new ConcurrentHashMap<>();
+        initial.keySet().forEach(id -> {
+            sold.put(id, new AtomicLong());
+            restocked.put(id, new AtomicLong());
+        });
+
+        List<Recorder> recorders = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        long started = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < BUYERS; i++) {
+                String token = buyerTokens.get(i % ACCOUNTS);
+                Recorder r = recorder(recorders);
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        // 80% of purchases go to the one hot sweet
+                        Long id = random.nextInt(100) < 80 ? hot : cold.get(random.nextInt(cold.size()));
+                        Result res = r.time("purchase", () -> post("/api/sweets/purchase/" + id, "{\"quantity\":1}", token));
+                        if (res.status() == 200) {
+                            sold.get(id).incrementAndGet();
+                        } else if (res.status() == 409) {
+                            r.count("purchase.sold-out");
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < READERS; i++) {
+                // /all is public, search needs a signed-in user
+                String token = buyerTokens.get(i % ACCOUNTS);
+                Recorder r = recorder(recorders);
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        if (random.nextBoolean()) {
+                            r.time("catalog.all", () -> get("/api/sweets/all", null));
+                        } else {
+                            r.time("catalog.search", () -> get("/api/sweets/search?name=barfi&limit=20", token));
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < LOGINS; i++) {
+                String username = "buyer" + i % ACCOUNTS;
+                Recorder r = recorder(recorders);
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        r.time("login", () -> post("/api/auth/login",
+                                "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}", null));
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < RESTOCKERS; i++) {
+                Recorder r = recorder(recorders);
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        Long id = random.nextInt(100) < 80 ? hot : cold.get(random.nextInt(cold.size()));
+                        Result res = r.time("restock", () -> post("/api/sweets/restock/" + id,
+                                "{\"quantity\":" + RESTOCK_QTY + "}", adminToken));
+                        if (res.status() == 200) {
+                            restocked.get(id).addAndGet(RESTOCK_QTY);
+                        }
+                        Thread.sleep(20);
+                    }
+                    return null;
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Map<String, Object> report = report(recorders, seconds);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        Path out = Path.of("target", "load-report.json");
+        Files.createDirectories(out.getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+
+        // an error or timeout leaves the outcome of that request unknown, so the sums below need none
+        long errors = recorders.stream().mapToLong(r -> r.errors).sum();
+        assertEquals(0, errors, "requests failed with 5xx, an unexpected status or a timeout");
+        assertTrue(sold.get(hot).get() > 0, "no purchase of the hot sweet went through");
+
+        for (Map.Entry<Long, Integer> e : initial.entrySet()) {
+            Long id = e.getKey();
+            int expected = (int) (e.getValue() + restocked.get(id).get() - sold.get(id).get());
+            SweetResponse current = sweetService.findById(id).orElseThrow();
+            assertTrue(current.getQuantity() >= 0, "sweet " + id + " oversold: " + current.getQuantity());
+            assertEquals(expected, current.getQuantity(),
+                    "sweet " + id + ": initial " + e.getValue() + " + restocked " + restocked.get(id)
+                            + " - sold " + sold.get(id));
+        }
+    }
+
+    private static Sweet sweet(String name, int quantity) {
+        return Sweet.builder().name(name).category("Load").price(new BigDecimal("1.50")).quantity(quantity).build();
+    }
+
+    private Optional<String> login(String username) throws Exception {
+        Result res = post("/api/auth/login",
+                "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}", null);
+        if (res.status() != 200) {
+            return Optional.empty();
+        }
+        JsonNode body = objectMapper.readTree(res.body());
+        return Optional.of(body.get("token").asText());
+    }
+
+    private Result get(String path, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        return new Result(response.statusCode(), response.body());
+    }
+
+    private Result post(String path, String json, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        return new Result(response.statusCode(), response.body());
+    }
+
+    private static synchronized Recorder recorder(List<Recorder> recorders) {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        return r;
+    }
+
+    private static Map<String, Object> report(List<Recorder> recorders, double seconds) {
+        Map<String, List<long[]>> latencies = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Long> errors = new HashMap<>();
+        for (Recorder r : recorders) {
+            r.latencies.forEach((op, l) -> latencies.computeIfAbsent(op, k -> new ArrayList<>()).add(l.toArray()));
+            r.counts.forEach((op, c) -> counts.merge(op, c, Long::sum));
+            r.errorsByOp.forEach((op, c) -> errors.merge(op, c, Long::sum));
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", Math.round(seconds * 10) / 10.0);
+        report.put("clients", Map.of("buyers", BUYERS, "readers", READERS, "logins", LOGINS, "restockers", RESTOCKERS));
+        Map<String, Object> ops = new LinkedHashMap<>();
+        latencies.keySet().stream().sorted().forEach(op -> {
+            long[] all = latencies.get(op).stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            Map<String, Object> o = new LinkedHashMap<>();
+            o.put("requests", all.length);
+            o.put("throughputPerSecond", Math.round(all.length / seconds));
+            o.put("p50Ms", percentile(all, 0.50));
+            o.put("p99Ms", percentile(all, 0.99));
+            o.put("p999Ms", percentile(all, 0.999));
+            o.put("maxMs", all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+            o.put("errors", errors.getOrDefault(op, 0L));
+            ops.put(op, o);
+        });
+        report.put("operations", ops);
+        report.put("counts", counts);
+        return report;
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(p * sortedNanos.length) - 1);
+        return Math.round(sortedNanos[Math.max(0, index)] / 1e3) / 1e3;
+    }
+
+    private record Result(int status, String body) {
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        Result run() throws Exception;
+    }
+
+    /** Latencies and error counts of one client thread; merged after the run, so recording never contends. */
+    private static final class Recorder {
+        private final Map<String, LongList> latencies = new HashMap<>();
+        private final Map<String, Long> counts = new HashMap<>();
+        private final Map<String, Long> errorsByOp = new HashMap<>();
+        private long errors;
+
+        Result time(String op, Call call) {
+            long start = System.nanoTime();
+            Result result;
+            try {
+                result = call.run();
+            } catch (Exception ex) {
+                // timeouts and connection failures
+                result = new Result(-1, ex.toString());
+            }
+            latencies.computeIfAbsent(op, k -> new LongList()).add(System.nanoTime() - start);
+            // 409 is a sold-out purchase, an expected answer under contention
+            if (result.status() != 200 && result.status() != 409) {
+                errors++;
+                errorsByOp.merge(op, 1L, Long::sum);
+            }
+            return result;
+        }
+
+        void count(String what) {
+            counts.merge(what, 1L, Long::sum);
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
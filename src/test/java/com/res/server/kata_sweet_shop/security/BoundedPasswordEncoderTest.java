@@ -0,0 +1,47 @@
+package com.res.server.kata_sweet_shop.security;
+
+import com.res.server.kata_sweet_shop.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedPasswordEncoderTest {
+
+    @Test
+    void encodesAndMatchesOnThePool() throws Exception {
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(4, 1, 0)) {
+            String hash = encoder.encode("secret");
+
+            assertTrue(encoder.matches("secret", hash));
+            assertFalse(encoder.matches("wrong", hash));
+        }
+    }
+
+    /** One worker and no queue: a second hash while the first runs is turned away, not queued. */
+    @Test
+    void saturatedPool_failsFastWithTooManyRequests() throws Exception {
+        String slowHash = new BCryptPasswordEncoder(14).encode("secret");
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(4, 1, 0)) {
+            CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> encoder.matches("secret", slowHash));
+            Thread.sleep(100);
+
+            assertThrows(TooManyRequestsException.class, () -> encoder.encode("other"));
+            assertTrue(running.get(30, TimeUnit.SECONDS));
+            assertNotNull(encoder.encode("other"));
+        }
+    }
+
+    @Test
+    void upgradeEncoding_whenTheCostDiffers() throws Exception {
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(5, 1, 0)) {
+            assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(5).encode("secret")));
+            assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+            assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret")));
+            assertFalse(encoder.upgradeEncoding("not-a-bcrypt-hash"));
+        }
+    }
+}
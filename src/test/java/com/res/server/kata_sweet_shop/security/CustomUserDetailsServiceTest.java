@@ -0,0 +1,77 @@
+package com.res.server.kata_sweet_shop.security;
+
+import com.res.server.kata_sweet_shop.entity.User;
+import com.res.server.kata_sweet_shop.repository.UserRepository;
+import com.res.server.kata_sweet_shop.service.UserChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CustomUserDetailsServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final CustomUserDetailsService service = new CustomUserDetailsService(userRepository, 100, 60_000);
+
+    /**
+     * The second lookup is served from the cache, and erasing the first copy's password
+     * (as Spring Security does after authenticating) leaves the cached one intact.
+     */
+    @Test
+    void loadUserByUsername_cachesAndReturnsFreshCopies() {
+        when(userRepository.findWithRolesByUsername("asha")).thenReturn(Optional.of(user("asha", "hash")));
+
+        UserDetails first = service.loadUserByUsername("asha");
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = service.loadUserByUsername("asha");
+
+        assertNull(first.getPassword());
+        assertEquals("hash", second.getPassword());
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"),
+                Set.copyOf(second.getAuthorities().stream().map(a -> a.getAuthority()).toList()));
+        verify(userRepository, times(1)).findWithRolesByUsername("asha");
+    }
+
+    @Test
+    void onUserChanged_evictsTheCachedUser() {
+        when(userRepository.findWithRolesByUsername("asha"))
+                .thenReturn(Optional.of(user("asha", "old")), Optional.of(user("asha", "new")));
+
+        service.loadUserByUsername("asha");
+        service.onUserChanged(new UserChangedEvent("asha"));
+
+        assertEquals("new", service.loadUserByUsername("asha").getPassword());
+    }
+
+    @Test
+    void updatePassword_storesTheNewHashAndEvicts() {
+        when(userRepository.findWithRolesByUsername("asha"))
+                .thenReturn(Optional.of(user("asha", "old")), Optional.of(user("asha", "new")));
+
+        UserDetails updated = service.updatePassword(service.loadUserByUsername("asha"), "new");
+
+        assertEquals("new", updated.getPassword());
+        verify(userRepository).updatePassword("asha", "new");
+        assertEquals("new", service.loadUserByUsername("asha").getPassword());
+    }
+
+    @Test
+    void loadUserByUsername_doesNotCacheMisses() {
+        when(userRepository.findWithRolesByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+        verify(userRepository, times(2)).findWithRolesByUsername("ghost");
+    }
+
+    private static User user(String username, String password) {
+        return User.builder().username(username).password(password).email(username + "@example.com")
+                .roles(Set.of("USER", "ADMIN")).build();
+    }
+}
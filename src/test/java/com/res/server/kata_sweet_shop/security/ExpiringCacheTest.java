@@ -0,0 +1,55 @@
+package com.res.server.kata_sweet_shop.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringCacheTest {
+
+    private static final long LATER = System.currentTimeMillis() + 60_000;
+
+    @Test
+    void expiredEntries_areGoneOnRead() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+        cache.put("a", "1", System.currentTimeMillis() - 1);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * A full cache sweeps expired entries, then frees a tenth of itself, so the next puts find room
+     * without another sweep.
+     */
+    @Test
+    void fullCache_freesATenthAtOnce() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v", LATER);
+        }
+
+        cache.put(100, "v", LATER);
+
+        assertEquals(91, cache.size());
+        assertEquals("v", cache.get(100));
+        for (int i = 101; i < 110; i++) {
+            cache.put(i, "v", LATER);
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void fullCache_dropsExpiredEntriesFirst() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v", i < 5 ? System.currentTimeMillis() - 1 : LATER);
+        }
+
+        cache.put(10, "v", LATER);
+
+        assertEquals(6, cache.size());
+        for (int i = 5; i <= 10; i++) {
+            assertEquals("v", cache.get(i));
+        }
+    }
+}
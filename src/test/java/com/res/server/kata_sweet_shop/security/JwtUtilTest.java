@@ -0,0 +1,39 @@
+package com.res.server.kata_sweet_shop.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil("c3VwZXJzZWNyZXRrZXkxMjM0NTY3ODkwSldU", 60_000, 100);
+
+    /**
+     * The second parse of the same token comes from the cache and yields the same principal.
+     */
+    @Test
+    void parse_verifiesOnce_andCachesPrincipal() {
+        String token = jwtUtil.generateToken("alice", List.of("USER"));
+
+        JwtPrincipal first = jwtUtil.parse(token).orElseThrow();
+        JwtPrincipal second = jwtUtil.parse(token).orElseThrow();
+
+        assertEquals("alice", first.username());
+        assertEquals("ROLE_USER", first.authorities().get(0).getAuthority());
+        assertSame(first, second);
+    }
+
+    @Test
+    void parse_rejectsTamperedToken() {
+        String token = jwtUtil.generateToken("alice", List.of("USER"));
+        // change a character inside the signature; the last one has unused low bits and may decode the same
+        int i = token.length() - 5;
+        String tampered = token.substring(0, i) + (token.charAt(i) == 'A' ? 'B' : 'A') + token.substring(i + 1);
+
+        assertEquals(Optional.empty(), jwtUtil.parse(tampered));
+        assertFalse(jwtUtil.validateToken("not-a-token"));
+    }
+}
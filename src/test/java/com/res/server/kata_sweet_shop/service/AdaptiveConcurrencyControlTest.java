@@ -0,0 +1,75 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdaptiveConcurrencyControlTest {
+
+    @Mock
+    private SweetRepository sweetRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AdaptiveConcurrencyControl control;
+
+    @BeforeEach
+    void setUp() {
+        // no backoff sleep, switch to pessimistic after two straight conflicts
+        control = new AdaptiveConcurrencyControl(sweetRepository, transactionManager, 3, 0, 0.3, 0.05, 5);
+    }
+
+    /**
+     * A conflict on the first attempt is retried and the second attempt wins.
+     */
+    @Test
+    void withSweet_shouldRetry_afterOptimisticConflict() {
+        Sweet s = new Sweet();
+        s.setId(1L);
+        when(sweetRepository.findById(1L)).thenReturn(Optional.of(s));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = control.withSweet(1L, sweet -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException(Sweet.class, 1L);
+            }
+            return "saved";
+        });
+
+        assertEquals("saved", result);
+        assertEquals(1, control.getRetries());
+        assertEquals(1, control.getConflicts());
+    }
+
+    /**
+     * Once the retries are used up the conflict reaches the caller, and the sweet is now hot.
+     */
+    @Test
+    void withSweet_shouldGiveUp_andSwitchToPessimistic_whenConflictsPersist() {
+        Sweet s = new Sweet();
+        s.setId(1L);
+        when(sweetRepository.findById(1L)).thenReturn(Optional.of(s));
+        when(sweetRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(s));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> control.withSweet(1L, sweet -> {
+            throw new ObjectOptimisticLockingFailureException(Sweet.class, 1L);
+        }));
+
+        assertEquals(AdaptiveConcurrencyControl.LockMode.PESSIMISTIC, control.modeFor(1L));
+        assertEquals(1, control.getSwitchesToPessimistic());
+        verify(sweetRepository, atLeastOnce()).findByIdForUpdate(1L);
+    }
+}
@@ -0,0 +1,138 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SearchCursor;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import com.res.server.kata_sweet_shop.dto.SweetSearch;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogServiceImplTest {
+
+    @Mock
+    private SweetRepository sweetRepository;
+    @Mock
+    private SweetService sweetService;
+    @Mock
+    private StockEngine stockEngine;
+
+    private CatalogServiceImpl catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new CatalogServiceImpl(sweetRepository, sweetService, stockEngine, new ObjectMapper(), true, 0, 0.5, 20);
+        SweetResponse ladoo = new SweetResponse(1L, "Ladoo", "Traditional", BigDecimal.TEN, 10, null, null, null, null);
+        SweetResponse toffee = new SweetResponse(2L, "Toffee", "Candy", BigDecimal.ONE, 3, null, null, null, null);
+        lenient().when(sweetRepository.findAllResponses()).thenReturn(List.of(toffee, ladoo));
+        lenient().when(stockEngine.currentStock(any())).thenReturn(OptionalInt.empty());
+    }
+
+    /**
+     * Repeated reads are served from the snapshot without touching the repository again.
+     */
+    @Test
+    void listAll_readsDatabaseOnce() {
+        List<SweetResponse> first = catalog.listAll();
+        List<SweetResponse> second = catalog.listAll();
+
+        assertEquals(List.of(1L, 2L), first.stream().map(SweetResponse::getId).toList());
+        assertSame(first, second);
+        verify(sweetRepository, times(1)).findAllResponses();
+        assertEquals(1, catalog.getRebuilds());
+    }
+
+    /**
+     * The body is serialized and gzipped once per version, not once per request.
+     */
+    @Test
+    void encodedAll_isBuiltOncePerVersion() throws Exception {
+        EncodedCatalog first = catalog.encodedAll();
+        assertSame(first, catalog.encodedAll());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertArrayEquals(first.json(), in.readAllBytes());
+        }
+        assertTrue(new String(first.json(), StandardCharsets.UTF_8).startsWith("[{\"id\":1,\"name\":\"Ladoo\""));
+
+        catalog.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+        assertNotSame(first, catalog.encodedAll());
+    }
+
+    /**
+     * Committed changes patch the snapshot and bump the version, still without a DB read.
+     */
+    @Test
+    void events_patchSnapshot_andBumpVersion() {
+        catalog.listAll();
+        long before = catalog.version();
+
+        catalog.onSweetChanged(SweetChangedEvent.stock(1L, -4));
+        catalog.onSweetChanged(SweetChangedEvent.deleted(2L));
+
+        List<SweetResponse> items = catalog.listAll();
+        assertEquals(1, items.size());
+        assertEquals(6, items.get(0).getQuantity());
+        assertTrue(catalog.version() > before);
+        assertEquals(1, catalog.getPatches());
+        verify(sweetRepository, times(1)).findAllResponses();
+    }
+
+    /**
+     * A purchase that commits before the re-read of changed rows, but whose event is queued only after
+     * the rebuild drained the queue, is in the row already and must not be subtracted again.
+     */
+    @Test
+    void rebuild_doesNotCountAStockChangeTwice() {
+        when(sweetRepository.findAllResponses()).thenAnswer(inv -> {
+            // committed during the full read: may or may not be in it, so the row is read again
+            catalog.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+            return List.of(new SweetResponse(1L, "Ladoo", "Traditional", BigDecimal.TEN, 10, null, null, null, null));
+        });
+        when(sweetRepository.findResponsesByIdIn(any())).thenAnswer(inv -> {
+            // the re-read sees both purchases, the second one's event arrives only now
+            catalog.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+            return List.of(new SweetResponse(1L, "Ladoo", "Traditional", BigDecimal.TEN, 8, null, null, null, null));
+        }).thenReturn(List.of(new SweetResponse(1L, "Ladoo", "Traditional", BigDecimal.TEN, 8, null, null, null, null)));
+
+        assertEquals(8, catalog.listAll().get(0).getQuantity());
+        assertEquals(8, catalog.listAll().get(0).getQuantity());
+        assertEquals(1, catalog.getRebuilds());
+    }
+
+    /**
+     * All filters apply together, like the SQL search.
+     */
+    @Test
+    void search_appliesEveryFilter() {
+        assertEquals(List.of(), catalog.search(SweetSearch.builder().name("lad").category("Candy").build()));
+
+        List<SweetResponse> found = catalog.search(SweetSearch.builder().name("lad").category("traditional")
+                .minPrice(BigDecimal.valueOf(5)).build());
+        assertEquals(List.of(1L), found.stream().map(SweetResponse::getId).toList());
+    }
+
+    @Test
+    void search_sortsAndPagesByCursor() {
+        SweetSearch byPrice = SweetSearch.builder().sort(SweetSearch.SortField.PRICE).limit(1).build();
+        List<SweetResponse> first = catalog.search(byPrice);
+        assertEquals(List.of(2L), first.stream().map(SweetResponse::getId).toList());
+
+        SearchCursor cursor = SearchCursor.after(first.get(0), SweetSearch.SortField.PRICE);
+        List<SweetResponse> second = catalog.search(byPrice.toBuilder().after(cursor).build());
+        assertEquals(List.of(1L), second.stream().map(SweetResponse::getId).toList());
+    }
+}
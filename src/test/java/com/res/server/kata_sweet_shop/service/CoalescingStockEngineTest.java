@@ -0,0 +1,115 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ServiceBusyException;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CoalescingStockEngineTest {
+
+    @Mock
+    private SweetRepository sweetRepository;
+    @Mock
+    private BatchedCheckout batchedCheckout;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Purchases arriving in the same window share one locked read; the ones that don't fit are rejected.
+     */
+    @Test
+    void concurrentPurchases_shareOneLockedRead() throws Exception {
+        Sweet sweet = new Sweet();
+        sweet.setId(1L);
+        sweet.setQuantity(5);
+        when(sweetRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(sweet));
+        // a wide window so all callers land in the same batch
+        CoalescingStockEngine engine = new CoalescingStockEngine(sweetRepository, batchedCheckout, transactionManager, 200_000, 1, 5_000, false);
+
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                try {
+                    engine.purchase(1L, 2);
+                    return true;
+                } catch (InsufficientStockException ex) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int sold = 0;
+        for (Future<Boolean> r : results) {
+            sold += r.get() ? 1 : 0;
+        }
+        callers.shutdown();
+        engine.shutdown();
+
+        assertEquals(2, sold);
+        assertEquals(1, sweet.getQuantity());
+        verify(sweetRepository, times(1)).findByIdForUpdate(1L);
+    }
+
+    /**
+     * After shutdown the batch can't be scheduled: the caller gets a 503 instead of waiting forever,
+     * and the dead batch doesn't swallow later purchases.
+     */
+    @Test
+    void purchaseAfterShutdown_failsFast() throws Exception {
+        CoalescingStockEngine engine = new CoalescingStockEngine(sweetRepository, batchedCheckout, transactionManager, 1_000, 1, 5_000, false);
+        engine.shutdown();
+
+        assertThrows(ServiceBusyException.class, () -> engine.purchase(1L, 1));
+        assertThrows(ServiceBusyException.class, () -> engine.purchase(1L, 1));
+    }
+
+    /**
+     * A purchase whose batch doesn't start within the wait timeout is withdrawn and answered with 503;
+     * when its batch finally runs, it is left out.
+     */
+    @Test
+    void purchaseNotPickedUpInTime_isWithdrawn() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Sweet blocker = new Sweet();
+        blocker.setId(1L);
+        blocker.setQuantity(5);
+        when(sweetRepository.findByIdForUpdate(1L)).thenAnswer(inv -> {
+            release.await();
+            return Optional.of(blocker);
+        });
+        // one worker, held by the batch of sweet 1
+        CoalescingStockEngine engine = new CoalescingStockEngine(sweetRepository, batchedCheckout, transactionManager, 1_000, 1, 200, false);
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        Future<?> first = callers.submit(() -> engine.purchase(1L, 1));
+        Thread.sleep(100);
+
+        assertThrows(ServiceBusyException.class, () -> engine.purchase(2L, 1));
+        release.countDown();
+        first.get();
+        callers.shutdown();
+        engine.shutdown();
+
+        assertEquals(4, blocker.getQuantity());
+        verify(sweetRepository, never()).findByIdForUpdate(2L);
+    }
+}
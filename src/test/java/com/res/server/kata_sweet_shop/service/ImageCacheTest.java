@@ -0,0 +1,121 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+import com.res.server.kata_sweet_shop.repository.ImageAssetRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageCacheTest {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+
+    @Mock
+    private ImageStorage storage;
+    @Mock
+    private ImageAssetRepository assets;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void miss_downloadsOnce_thenServesFromDisk() throws Exception {
+        asset(A, "http://cdn/a");
+        when(storage.open("http://cdn/a")).thenReturn(new ByteArrayInputStream(new byte[10]));
+        ImageCache cache = new ImageCache(storage, assets, dir.toString(), DataSize.ofBytes(100), 60_000);
+
+        CachedImage first = cache.get(A + ".png").orElseThrow();
+        CachedImage second = cache.get(A).orElseThrow();
+
+        assertEquals(A, first.key());
+        assertEquals("image/png", first.contentType());
+        assertEquals(10, Files.size(first.file()));
+        assertEquals(first.file(), second.file());
+        verify(storage, times(1)).open(anyString());
+        verify(assets, times(1)).findById(A);
+    }
+
+    @Test
+    void leastRecentlyServed_isEvicted_whenOverMaxSize() throws Exception {
+        asset(A, "http://cdn/a");
+        asset(B, "http://cdn/b");
+        when(storage.open(anyString())).thenAnswer(inv -> new ByteArrayInputStream(new byte[60]));
+        ImageCache cache = new ImageCache(storage, assets, dir.toString(), DataSize.ofBytes(100), 60_000);
+
+        cache.get(A);
+        cache.get(B);
+
+        assertEquals(60, cache.getCachedBytes());
+        // A went, so asking again downloads it again
+        cache.get(A);
+        verify(storage, times(2)).open("http://cdn/a");
+    }
+
+    /**
+     * An evicted image asked for again before its delayed delete runs gets a new file, which the
+     * pending delete of the old copy leaves alone.
+     */
+    @Test
+    void refetchWithinDeleteDelay_survivesTheJanitor() throws Exception {
+        asset(A, "http://cdn/a");
+        asset(B, "http://cdn/b");
+        when(storage.open(anyString())).thenAnswer(inv -> new ByteArrayInputStream(new byte[60]));
+        ImageCache cache = new ImageCache(storage, assets, dir.toString(), DataSize.ofBytes(100), 100);
+
+        Path evicted = cache.get(A).orElseThrow().file();
+        cache.get(B);
+        Path refetched = cache.get(A).orElseThrow().file();
+        Thread.sleep(500);
+
+        assertFalse(Files.exists(evicted));
+        CachedImage served = cache.get(A).orElseThrow();
+        assertEquals(refetched, served.file());
+        assertEquals(60, Files.size(served.file()));
+        verify(storage, times(2)).open("http://cdn/a");
+    }
+
+    @Test
+    void restart_reindexesFilesAlreadyOnDisk() throws Exception {
+        Files.write(dir.resolve(A + "-thumb.jpg"), new byte[5]);
+        Files.write(dir.resolve(A + "." + "c".repeat(32) + ".png"), new byte[7]);
+        Files.write(dir.resolve(A + ".1234.part"), new byte[5]);
+
+        ImageCache cache = new ImageCache(storage, assets, dir.toString(), DataSize.ofBytes(100), 60_000);
+
+        CachedImage thumb = cache.get(A + "-thumb").orElseThrow();
+        assertEquals("image/jpeg", thumb.contentType());
+        assertEquals("image/png", cache.get(A).orElseThrow().contentType());
+        assertEquals(12, cache.getCachedBytes());
+        assertFalse(Files.exists(dir.resolve(A + ".1234.part")));
+        verifyNoInteractions(storage, assets);
+    }
+
+    @Test
+    void unknownOrMalformedNames_areEmpty() throws Exception {
+        when(assets.findById(B)).thenReturn(Optional.empty());
+        ImageCache cache = new ImageCache(storage, assets, dir.toString(), DataSize.ofBytes(100), 60_000);
+
+        assertTrue(cache.get(B).isEmpty());
+        assertTrue(cache.get("../../etc/passwd").isEmpty());
+        assertTrue(cache.get(A + "-huge").isEmpty());
+    }
+
+    private void asset(String hash, String url) {
+        when(assets.findById(hash)).thenReturn(Optional.of(
+                ImageAsset.builder().hash(hash).url(url).contentType("image/png").build()));
+    }
+}
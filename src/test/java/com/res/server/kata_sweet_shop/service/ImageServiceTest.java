@@ -0,0 +1,136 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.dto.SweetRequest;
+import com.res.server.kata_sweet_shop.entity.ImageAsset;
+import com.res.server.kata_sweet_shop.entity.ImageStatus;
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.repository.ImageAssetRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageServiceTest {
+
+    @Mock
+    private ImageStorage storage;
+    @Mock
+    private ImageAssetRepository assets;
+    @Mock
+    private SweetService sweetService;
+
+    private final Map<String, ImageAsset> stored = new ConcurrentHashMap<>();
+    private ImageService imageService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // the asset table, in memory
+        lenient().when(assets.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(stored.get(inv.<String>getArgument(0))));
+        lenient().when(assets.save(any())).thenAnswer(inv -> {
+            ImageAsset asset = inv.getArgument(0);
+            stored.put(asset.getHash(), asset);
+            return asset;
+        });
+        lenient().when(storage.store(any(Path.class), any(), anyString()))
+                .thenAnswer(inv -> "http://img/" + inv.getArgument(2));
+        lenient().when(sweetService.create(any(), any(), any())).thenAnswer(inv -> {
+            Sweet s = new Sweet();
+            s.setId(1L);
+            s.setImageStatus(inv.getArgument(2));
+            return s;
+        });
+        imageService = new ImageService(storage, new ImageVariants(32, 1_000_000), assets, sweetService, 1, 10, "origin", "", false);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        imageService.shutdown();
+    }
+
+    @Test
+    void newImage_isStoredWithThumbnail_andMarkedReady() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("image", "p.png", "image/png", png(200, 100));
+
+        Sweet sweet = imageService.createWithImage(request(), file);
+
+        assertEquals(ImageStatus.PENDING, sweet.getImageStatus());
+        ArgumentCaptor<StoredImage> image = ArgumentCaptor.forClass(StoredImage.class);
+        verify(sweetService, timeout(5000)).setImage(eq(1L), image.capture(), eq(ImageStatus.READY));
+        String hash = image.getValue().hash();
+        assertEquals(64, hash.length());
+        assertEquals("http://img/" + hash, image.getValue().url());
+        assertEquals("http://img/" + hash + "-thumb", image.getValue().thumbnailUrl());
+        verify(storage).store(any(Path.class), eq("image/jpeg"), eq(hash + "-thumb"));
+    }
+
+    @Test
+    void sameBytesAgain_reuseStoredUrls_withoutUploading() throws Exception {
+        byte[] bytes = png(50, 50);
+        imageService.createWithImage(request(), new MockMultipartFile("image", "a.png", "image/png", bytes));
+        verify(sweetService, timeout(5000)).setImage(eq(1L), any(), eq(ImageStatus.READY));
+        clearInvocations(storage);
+
+        Sweet again = imageService.createWithImage(request(), new MockMultipartFile("image", "b.png", "image/png", bytes));
+
+        assertEquals(ImageStatus.READY, again.getImageStatus());
+        ArgumentCaptor<StoredImage> image = ArgumentCaptor.forClass(StoredImage.class);
+        verify(sweetService).create(any(), image.capture(), eq(ImageStatus.READY));
+        assertNotNull(image.getValue().thumbnailUrl());
+        verifyNoInteractions(storage);
+    }
+
+    @Test
+    void notAnImage_isStoredWithoutVariants() throws Exception {
+        imageService.createWithImage(request(),
+                new MockMultipartFile("image", "x.jpg", "image/jpeg", "not really a jpeg".getBytes()));
+
+        ArgumentCaptor<StoredImage> image = ArgumentCaptor.forClass(StoredImage.class);
+        verify(sweetService, timeout(5000)).setImage(eq(1L), image.capture(), eq(ImageStatus.READY));
+        assertNotNull(image.getValue().url());
+        assertNull(image.getValue().thumbnailUrl());
+        verify(storage, times(1)).store(any(Path.class), any(), anyString());
+    }
+
+    @Test
+    void uploadRefusedAfterSave_returnsTheSweetAsFailed() throws Exception {
+        imageService.shutdown();
+
+        Sweet sweet = imageService.createWithImage(request(), new MockMultipartFile("image", "p.png", "image/png", png(20, 20)));
+
+        assertEquals(ImageStatus.FAILED, sweet.getImageStatus());
+        verify(sweetService).setImage(1L, null, ImageStatus.FAILED);
+        verifyNoInteractions(storage);
+    }
+
+    private static SweetRequest request() {
+        SweetRequest request = new SweetRequest();
+        request.setName("Ladoo");
+        request.setPrice(BigDecimal.TEN);
+        return request;
+    }
+
+    private static byte[] png(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
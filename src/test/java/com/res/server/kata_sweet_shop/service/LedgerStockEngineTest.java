@@ -0,0 +1,134 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.res.server.kata_sweet_shop.entity.Sweet;
+import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.repository.LedgerCheckpointRepository;
+import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:ledgerdb",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=password",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "app.inventory.engine=ledger",
+    "app.inventory.ledger.journal-dir=target/ledger-test",
+    // flushes are driven by the test
+    "app.inventory.ledger.flush-interval-ms=3600000"
+})
+class LedgerStockEngineTest {
+
+    @Autowired
+    private SweetService sweetService;
+    @Autowired
+    private LedgerStockEngine engine;
+    @Autowired
+    private SweetRepository sweetRepository;
+    @Autowired
+    private LedgerCheckpointRepository checkpointRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long newSweet(int quantity) {
+        Sweet s = new Sweet();
+        s.setName("Jalebi");
+        s.setCategory("Traditional");
+        s.setPrice(BigDecimal.valueOf(20));
+        s.setQuantity(quantity);
+        return sweetRepository.save(s).getId();
+    }
+
+    /**
+     * Purchases are decided in memory and only reach the table on flush.
+     */
+    @Test
+    void purchase_isDecidedInMemory_andWrittenBehind() throws Exception {
+        Long id = newSweet(5);
+
+        sweetService.purchasesweet(id, 3);
+        assertThrows(InsufficientStockException.class, () -> sweetService.purchasesweet(id, 3));
+        assertEquals(5, sweetRepository.findQuantityById(id).orElseThrow());
+
+        engine.flush();
+        assertEquals(2, sweetRepository.findQuantityById(id).orElseThrow());
+    }
+
+    /**
+     * Deltas journaled but never flushed (crash) are applied once by the next engine on boot.
+     */
+    @Test
+    void recover_replaysUnflushedJournal_exactlyOnce() throws Exception {
+        Long id = newSweet(10);
+        sweetService.purchasesweet(id, 4);
+        sweetService.restock(id, 1);
+        // no flush: simulate a crash by booting a second engine over the same journal directory
+
+        Path dir = Files.createTempDirectory("ledger");
+        for (Path p : Files.newDirectoryStream(Path.of("target/ledger-test"))) {
+            Files.copy(p, dir.resolve(p.getFileName()));
+        }
+        LedgerStockEngine restarted = new LedgerStockEngine(sweetRepository, checkpointRepository,
+                jdbcTemplate, transactionManager, dir.toString(), false, 3600000);
+        restarted.recover();
+        assertEquals(7, sweetRepository.findQuantityById(id).orElseThrow());
+
+        // a second boot must not apply the same segment again
+        LedgerStockEngine again = new LedgerStockEngine(sweetRepository, checkpointRepository,
+                jdbcTemplate, transactionManager, dir.toString(), false, 3600000);
+        again.recover();
+        assertEquals(7, sweetRepository.findQuantityById(id).orElseThrow());
+        restarted.shutdown();
+        again.shutdown();
+    }
+
+    /**
+     * A journal failure part-way through a basket cancels the lines already journaled and puts
+     * every line back, instead of leaving a partly charged basket that a restart would disagree with.
+     */
+    @Test
+    void checkout_journalFailure_undoesTheWholeBasket() throws Exception {
+        SweetRepository sweets = mock(SweetRepository.class);
+        when(sweets.findQuantityById(any())).thenReturn(Optional.of(5));
+        StockJournal failing = mock(StockJournal.class);
+        doThrow(new IOException("disk full")).when(failing).append(2L, -1);
+        LedgerStockEngine ledger = new LedgerStockEngine(sweets, mock(LedgerCheckpointRepository.class),
+                mock(JdbcTemplate.class), mock(PlatformTransactionManager.class), failing, 3600000);
+
+        assertThrows(UncheckedIOException.class, () -> ledger.checkout(new TreeMap<>(Map.of(1L, 2, 2L, 1, 3L, 4))));
+
+        InOrder order = inOrder(failing);
+        order.verify(failing).append(1L, -2);
+        order.verify(failing).append(2L, -1);
+        order.verify(failing).append(1L, 2);
+        verify(failing, never()).append(eq(3L), anyInt());
+        assertEquals(OptionalInt.of(5), ledger.currentStock(1L));
+        assertEquals(OptionalInt.of(5), ledger.currentStock(2L));
+        assertEquals(OptionalInt.of(5), ledger.currentStock(3L));
+    }
+}
@@ -0,0 +1,30 @@
+package com.res.server.kata_sweet_shop.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopMetricsTest {
+
+    /**
+     * Only the first max-sweet-tags sweets get their own series; later ones share sweet="other".
+     */
+    @Test
+    void purchased_capsPerSweetTags() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ShopMetrics metrics = new ShopMetrics(registry, 2);
+
+        metrics.purchased(1L, 3);
+        metrics.purchased(2L, 1);
+        metrics.purchased(3L, 4);
+        metrics.purchased(4L, 1);
+        metrics.purchased(1L, 2);
+
+        assertEquals(5.0, registry.get("sweetshop.purchase.units").tag("sweet", "1").counter().count());
+        assertEquals(1.0, registry.get("sweetshop.purchase.units").tag("sweet", "2").counter().count());
+        assertEquals(5.0, registry.get("sweetshop.purchase.units").tag("sweet", ShopMetrics.OTHER).counter().count());
+        assertEquals(3, registry.find("sweetshop.purchase.units").counters().size());
+    }
+}
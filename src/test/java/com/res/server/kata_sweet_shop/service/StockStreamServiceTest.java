@@ -0,0 +1,90 @@
+package com.res.server.kata_sweet_shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.res.server.kata_sweet_shop.dto.SweetResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockStreamServiceTest {
+
+    @Mock
+    private CatalogService catalogService;
+
+    /**
+     * While a slow client is still receiving one batch, newer values for the same sweet
+     * replace each other, and only the latest one is sent next.
+     */
+    @Test
+    void slowSubscriber_getsLatestValue_notEveryIntermediateOne() throws Exception {
+        when(catalogService.version()).thenReturn(7L);
+        when(catalogService.findById(1L)).thenReturn(
+                Optional.of(ladoo(5)), Optional.of(ladoo(4)), Optional.of(ladoo(3)));
+        // ticks are driven by the test
+        StockStreamService stream = new StockStreamService(catalogService, new ObjectMapper(),
+                3_600_000, 3_600_000, 0, 10);
+        BlockingEmitter client = new BlockingEmitter();
+        stream.subscribe(client);
+
+        stream.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+        stream.tick();
+        assertTrue(client.firstChangeStarted.await(5, TimeUnit.SECONDS));
+        stream.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+        stream.tick();
+        stream.onSweetChanged(SweetChangedEvent.stock(1L, -1));
+        stream.tick();
+        client.release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.events.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<String> events = client.events;
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).startsWith("event:ready"));
+        assertTrue(events.get(1).contains("\"quantity\":5"));
+        assertTrue(events.get(2).contains("\"quantity\":3"));
+        assertFalse(events.get(2).contains("\"quantity\":4"));
+        stream.shutdown();
+    }
+
+    private static SweetResponse ladoo(int quantity) {
+        return new SweetResponse(1L, "Ladoo", "Traditional", BigDecimal.TEN, quantity, null, null, null, null);
+    }
+
+    // records what would go on the wire; the first "changes" event blocks like a slow socket
+    private static class BlockingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch firstChangeStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            String text = builder.build().stream().map(d -> d.getData().toString()).collect(Collectors.joining());
+            if (text.startsWith("event:changes") && firstChangeStarted.getCount() > 0) {
+                firstChangeStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(text);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.res.server.kata_sweet_shop.service;
 import com.res.server.kata_sweet_shop.dto.SweetRequest;
 import com.res.server.kata_sweet_shop.entity.Sweet;
 import com.res.server.kata_sweet_shop.exception.InsufficientStockException;
+import com.res.server.kata_sweet_shop.exception.ResourceNotFoundException;
 import com.res.server.kata_sweet_shop.repository.SweetRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.math.BigDecimal;
 import java.util.Optional;
@@ -22,36 +24,41 @@ class SweetServiceTest {
     @Mock
     private SweetRepository sweetRepository;
 
-    @InjectMocks
+    @Mock
+    private AdaptiveConcurrencyControl concurrencyControl;
+    @Mock
+    private BatchedCheckout batchedCheckout;
+    @Mock
+    private ApplicationEventPublisher events;
+
     private SweetServiceImpl sweetService;
 
+    @BeforeEach
+    void setUp() {
+        // real JPA engine over the mocked repository, so purchases still exercise the UPDATE path
+        sweetService = new SweetServiceImpl(sweetRepository, concurrencyControl,
+                new JpaStockEngine(sweetRepository, batchedCheckout), events);
+    }
+
     @Test
     void purchase_decreases_quantity() {
         // Arrange
-        Sweet s = new Sweet();
-        s.setId(1L);
-        s.setQuantity(5);
-        s.setPrice(BigDecimal.valueOf(10));
-
-        when(sweetRepository.findById(1L)).thenReturn(Optional.of(s));
+        when(sweetRepository.decrementStock(1L, 2)).thenReturn(1);
 
         // Act
         sweetService.purchasesweet(1L, 2);
 
         // Assert
-        assertEquals(3, s.getQuantity());
-        verify(sweetRepository, times(1)).save(s);
+        verify(sweetRepository, times(1)).decrementStock(1L, 2);
+        verify(sweetRepository, never()).findById(any());
+        verify(sweetRepository, never()).save(any());
     }
 
     @Test
     void purchaseSweet_shouldThrowException_whenQuantityInsufficient() {
         // Arrange
-        Sweet sweet = new Sweet();
-        sweet.setId(1L);
-        sweet.setName("Ladoo");
-        sweet.setQuantity(0);
-
-        when(sweetRepository.findById(1L)).thenReturn(Optional.of(sweet));
+        when(sweetRepository.decrementStock(1L, 1)).thenReturn(0);
+        when(sweetRepository.findQuantityById(1L)).thenReturn(Optional.of(0));
 
         // Act + Assert
         assertThrows(InsufficientStockException.class, () -> {
@@ -60,6 +67,21 @@ class SweetServiceTest {
         verify(sweetRepository, never()).save(any());
     }
 
+    @Test
+    void purchaseSweet_shouldThrowNotFound_whenSweetMissing() {
+        when(sweetRepository.decrementStock(99L, 1)).thenReturn(0);
+        when(sweetRepository.findQuantityById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> sweetService.purchasesweet(99L, 1));
+    }
+
+    @Test
+    void restock_shouldThrowNotFound_whenSweetMissing() {
+        when(sweetRepository.incrementStock(99L, 5)).thenReturn(0);
+
+        assertThrows(ResourceNotFoundException.class, () -> sweetService.restock(99L, 5));
+    }
+
     @Test
     void testCreateSweetWithImageUrl() {
         SweetRequest request = new SweetRequest();
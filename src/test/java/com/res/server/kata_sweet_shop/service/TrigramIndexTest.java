@@ -0,0 +1,52 @@
+package com.res.server.kata_sweet_shop.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex(0.5, 20);
+        index.rebuild(Map.of(
+                1L, "Motichoor Ladoo",
+                2L, "Ladoo",
+                3L, "Besan Ladoo Special",
+                4L, "Kaju Katli",
+                5L, "Chocolate Cake"));
+    }
+
+    /**
+     * Substring matches ignore case and are ranked exact, prefix, word start, then by length.
+     */
+    @Test
+    void search_ranksSubstringMatches() {
+        assertEquals(List.of(2L, 1L, 3L), index.search("LADOO"));
+        assertEquals(List.of(4L), index.search("katl"));
+        assertEquals(List.of(2L, 1L, 3L, 5L), index.search("la"));
+    }
+
+    @Test
+    void search_toleratesTypos_afterExactHits() {
+        assertEquals(List.of(2L, 1L, 3L), index.search("laddoo"));
+        assertTrue(index.search("chocolat cake").contains(5L));
+        assertEquals(List.of(), index.search("barfi"));
+    }
+
+    @Test
+    void putAndRemove_keepIndexInSync() {
+        index.put(4L, "Kaju Barfi");
+        index.remove(2L);
+
+        assertEquals(List.of(4L), index.search("barfi"));
+        assertEquals(List.of(), index.search("katli"));
+        assertEquals(List.of(1L, 3L), index.search("ladoo"));
+    }
+}